@@ -0,0 +1,31 @@
+#!/bin/bash
+# Cluster a corpus in memory, out of core, with one worker process and with several worker processes,
+# all from the same seed, and check that the clusters match.
+# Usage: compare_shards.sh [corpus] [workers] [seed]
+corpus=${1:-resources/articles.txt}
+workers=${2:-3}
+seed=${3:-1}
+dir=$(mktemp -d)
+trap 'rm -rf "$dir"' EXIT
+javac -d "$dir/classes" src/com/cendrillon/clustering/*.java || exit 1
+run() {
+	name=$1
+	shift
+	java -cp "$dir/classes" com.cendrillon.clustering.ClusterDocuments -seed "$seed" "$@" "$corpus" \
+	    > "$dir/$name.txt" || exit 1
+}
+run memory
+run spill -spill "$dir/vectors"
+run shards-1 -shards 1
+run shards-$workers -shards "$workers"
+status=0
+for name in spill shards-1 shards-$workers; do
+	if diff -q "$dir/memory.txt" "$dir/$name.txt" > /dev/null; then
+		echo "$name: match"
+	else
+		echo "$name: differ"
+		diff "$dir/memory.txt" "$dir/$name.txt" | head -20
+		status=1
+	fi
+done
+exit $status
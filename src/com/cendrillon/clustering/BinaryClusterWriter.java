@@ -0,0 +1,41 @@
+package com.cendrillon.clustering;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * ClusterWriter which writes a compact big-endian binary format. The header holds a magic number,
+ * a format version and the number of clusters. Each cluster is then written as its number, its
+ * number of documents, the length and elements of its centroid, and the IDs of its documents in
+ * ascending order. Clusters without a centroid Vector are written with a centroid length of 0.
+ */
+public class BinaryClusterWriter extends ClusterWriter {
+	private static final int MAGIC = 0x434C5354;
+	private static final int VERSION = 1;
+
+	/** Construct a BinaryClusterWriter which writes to the provided channel. */
+	public BinaryClusterWriter(WritableByteChannel channel) {
+		super(channel);
+	}
+
+	@Override
+	protected void writeCluster(int clusterIndex, Cluster cluster, int[] order) throws IOException {
+		writeInt(clusterIndex);
+		writeInt(order.length);
+		Vector centroid = cluster.getCentroid();
+		writeInt(centroid == null ? 0 : centroid.size());
+		for (int i = 0; centroid != null && i < centroid.size(); i++) {
+			writeDouble(centroid.get(i));
+		}
+		for (int i : order) {
+			writeLong(cluster.getDocuments().get(i).getId());
+		}
+	}
+
+	@Override
+	protected void writeHeader(int numClusters) throws IOException {
+		writeInt(MAGIC);
+		writeInt(VERSION);
+		writeInt(numClusters);
+	}
+}
@@ -0,0 +1,419 @@
+package com.cendrillon.clustering;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Snapshot of the progress of KMeansClusterer, from which an interrupted run can resume. Holds the
+ * number of clusters k being run, the next iteration and current centroids for that k, the seed
+ * from which random numbers for each k are drawn, and the centroids and document assignments of the
+ * best ClusterList found so far. Centroid Vectors are stored sparsely. A checkpoint only applies to
+ * the DocumentList it was taken for, which is identified by a fingerprint of its documents, and to
+ * the distance metric, number of features and clustering parameters it was taken with. The encoded
+ * documents themselves are not held, so they must be encoded again before a run resumes.
+ */
+public class Checkpoint {
+	private static final int MAGIC = 0x4B4D4350;
+	private static final int VERSION = 2;
+	final int[] bestAssignments;
+	final Vector[] bestCentroids;
+	final double bestRatio;
+	final int[][] bestSignatures;
+	final Vector[] centroids;
+	final int clusteringIterations;
+	final double clusteringThreshold;
+	final String distanceClass;
+	final long fingerprint;
+	final int iteration;
+	final int k;
+	final int numFeatures;
+	final long seed;
+	final int[][] signatures;
+
+	/**
+	 * Construct a checkpoint.
+	 *
+	 * @param fingerprint the fingerprint of the DocumentList being clustered
+	 * @param distanceClass the class name of the distance metric used for clustering
+	 * @param numFeatures the number of features used to encode each document
+	 * @param clusteringThreshold the threshold used to determine the number of clusters k
+	 * @param clusteringIterations the number of iterations used in k-means clustering
+	 * @param seed the seed from which random numbers for each k are drawn
+	 * @param k the number of clusters to run next
+	 * @param iteration the next iteration to run for k, or 0 if k has not started
+	 * @param centroids the current centroids for k, or null if k has not started
+	 * @param signatures the current signatures for k, or null if k has not started
+	 * @param bestRatio the intracluster to intercluster distance ratio of the best ClusterList
+	 * @param bestCentroids the centroids of the best ClusterList, or null if there is none
+	 * @param bestSignatures the signatures of the best ClusterList, or null if there is none
+	 * @param bestAssignments the cluster index of each document in the best ClusterList, or null if
+	 *          there is none
+	 */
+	public Checkpoint(long fingerprint, String distanceClass, int numFeatures,
+	    double clusteringThreshold, int clusteringIterations, long seed, int k, int iteration,
+	    Vector[] centroids, int[][] signatures, double bestRatio, Vector[] bestCentroids,
+	    int[][] bestSignatures, int[] bestAssignments) {
+		this.fingerprint = fingerprint;
+		this.distanceClass = distanceClass;
+		this.numFeatures = numFeatures;
+		this.clusteringThreshold = clusteringThreshold;
+		this.clusteringIterations = clusteringIterations;
+		this.seed = seed;
+		this.k = k;
+		this.iteration = iteration;
+		this.centroids = centroids;
+		this.signatures = signatures;
+		this.bestRatio = bestRatio;
+		this.bestCentroids = bestCentroids;
+		this.bestSignatures = bestSignatures;
+		this.bestAssignments = bestAssignments;
+	}
+
+	/**
+	 * Calculate a fingerprint identifying the documents in a DocumentList and their order, from the
+	 * ID, weight and a hash of the contents of each document. Documents whose contents have been
+	 * released contribute only their ID and weight.
+	 */
+	public static long calcFingerprint(DocumentList documentList) {
+		long fingerprint = 0xCBF29CE484222325L ^ documentList.size();
+		for (Document document : documentList) {
+			fingerprint = (fingerprint ^ document.getId()) * 0x100000001B3L;
+			fingerprint = (fingerprint ^ document.getWeight()) * 0x100000001B3L;
+			if (document.getContents() != null) {
+				fingerprint = (fingerprint ^ HistogramCache.calcContentHash(document.getContents()))
+				    * 0x100000001B3L;
+			}
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Get the index of the cluster containing each document in the provided DocumentList, or -1 for
+	 * documents which are not in any cluster.
+	 */
+	static int[] getAssignments(ClusterList clusterList, DocumentList documentList) {
+		Map<Document, Integer> indices = new IdentityHashMap<Document, Integer>();
+		for (int i = 0; i < documentList.size(); i++) {
+			indices.put(documentList.get(i), i);
+		}
+		int[] assignments = new int[documentList.size()];
+		Arrays.fill(assignments, -1);
+		int clusterIndex = 0;
+		for (Cluster cluster : clusterList) {
+			for (Document document : cluster.getDocuments()) {
+				assignments[indices.get(document)] = clusterIndex;
+			}
+			clusterIndex++;
+		}
+		return assignments;
+	}
+
+	/** Get the centroid of each cluster in the provided ClusterList. */
+	static Vector[] getCentroids(ClusterList clusterList) {
+		Vector[] centroids = new Vector[clusterList.size()];
+		int i = 0;
+		for (Cluster cluster : clusterList) {
+			centroids[i++] = cluster.getCentroid();
+		}
+		return centroids;
+	}
+
+	/** Get the signature of each cluster in the provided ClusterList. */
+	static int[][] getSignatures(ClusterList clusterList) {
+		int[][] signatures = new int[clusterList.size()][];
+		int i = 0;
+		for (Cluster cluster : clusterList) {
+			signatures[i++] = cluster.getSignature();
+		}
+		return signatures;
+	}
+
+	/**
+	 * Determine whether the provided centroids and signatures describe clusters of documents encoded
+	 * like the provided sample document, with a centroid only if it has a feature vector and a
+	 * signature of the same length only if it has a signature.
+	 */
+	private static boolean isConsistent(Vector[] centroids, int[][] signatures, Document sample) {
+		if (signatures == null || signatures.length != centroids.length) {
+			return false;
+		}
+		for (int i = 0; i < centroids.length; i++) {
+			if ((centroids[i] == null) != (sample.getVector() == null)
+			    || (signatures[i] == null) != (sample.getSignature() == null)) {
+				return false;
+			}
+			if (signatures[i] != null && signatures[i].length != sample.getSignature().length) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Determine whether the centroids and assignments of the checkpoint fit the provided DocumentList,
+	 * so that a checkpoint which passed the fingerprint check but was damaged or written by another
+	 * build is rejected rather than restored.
+	 */
+	boolean isConsistentWith(DocumentList documentList) {
+		if (k < 1 || k > documentList.size() || iteration < 0 || iteration >= clusteringIterations) {
+			return false;
+		}
+		Document sample = documentList.get(0);
+		if (centroids != null && (centroids.length != k || !isConsistent(centroids, signatures,
+		    sample))) {
+			return false;
+		}
+		if (bestAssignments == null) {
+			return true;
+		}
+		if (bestAssignments.length != documentList.size() || bestCentroids == null
+		    || bestCentroids.length == 0 || !isConsistent(bestCentroids, bestSignatures, sample)) {
+			return false;
+		}
+		for (int assignment : bestAssignments) {
+			if (assignment < -1 || assignment >= bestCentroids.length) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Read a checkpoint from the provided file. Returns null if the file does not exist or cannot be
+	 * read as a checkpoint.
+	 */
+	public static Checkpoint read(File location) {
+		if (!location.exists()) {
+			return null;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(
+			    location)));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					return null;
+				}
+				// no array in a checkpoint can have more elements than the file has bytes
+				long maxLength = location.length();
+				long fingerprint = in.readLong();
+				String distanceClass = in.readUTF();
+				int numFeatures = in.readInt();
+				double clusteringThreshold = in.readDouble();
+				int clusteringIterations = in.readInt();
+				long seed = in.readLong();
+				int k = in.readInt();
+				int iteration = in.readInt();
+				Vector[] centroids = readVectors(in, maxLength, numFeatures);
+				int[][] signatures = readSignatures(in, maxLength);
+				double bestRatio = in.readDouble();
+				Vector[] bestCentroids = readVectors(in, maxLength, numFeatures);
+				int[][] bestSignatures = readSignatures(in, maxLength);
+				int[] bestAssignments = readInts(in, maxLength);
+				return new Checkpoint(fingerprint, distanceClass, numFeatures, clusteringThreshold,
+				    clusteringIterations, seed, k, iteration, centroids, signatures, bestRatio,
+				    bestCentroids, bestSignatures, bestAssignments);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/** Read an array of ints, or null. */
+	private static int[] readInts(DataInputStream in, long maxLength) throws IOException {
+		int length = readLength(in, maxLength);
+		if (length < 0) {
+			return null;
+		}
+		int[] values = new int[length];
+		for (int i = 0; i < length; i++) {
+			values[i] = in.readInt();
+		}
+		return values;
+	}
+
+	/**
+	 * Read the length of an array, or -1 for null. Throws IOException if the length is longer than
+	 * maxLength.
+	 */
+	private static int readLength(DataInputStream in, long maxLength) throws IOException {
+		int length = in.readInt();
+		if (length < -1 || length > maxLength) {
+			throw new IOException("Invalid array length " + length);
+		}
+		return length;
+	}
+
+	/** Read an array of signatures, or null. */
+	private static int[][] readSignatures(DataInputStream in, long maxLength) throws IOException {
+		int length = readLength(in, maxLength);
+		if (length < 0) {
+			return null;
+		}
+		int[][] signatures = new int[length][];
+		for (int i = 0; i < length; i++) {
+			signatures[i] = readInts(in, maxLength);
+		}
+		return signatures;
+	}
+
+	/**
+	 * Read an array of sparsely stored Vectors, or null. Throws IOException if a Vector does not have
+	 * numFeatures elements or an element index is out of range.
+	 */
+	private static Vector[] readVectors(DataInputStream in, long maxLength, int numFeatures)
+	    throws IOException {
+		int length = readLength(in, maxLength);
+		if (length < 0) {
+			return null;
+		}
+		Vector[] vectors = new Vector[length];
+		for (int i = 0; i < length; i++) {
+			int size = in.readInt();
+			if (size < 0) {
+				continue;
+			}
+			if (size != numFeatures) {
+				throw new IOException("Vector has " + size + " features, expected " + numFeatures);
+			}
+			vectors[i] = new Vector(size);
+			int numNonZero = readLength(in, size);
+			for (int j = 0; j < numNonZero; j++) {
+				int index = in.readInt();
+				if (index < 0 || index >= size) {
+					throw new IOException("Invalid vector index " + index);
+				}
+				vectors[i].set(index, in.readDouble());
+			}
+		}
+		return vectors;
+	}
+
+	/**
+	 * Create a ClusterList with the provided centroids and signatures, and add each document in the
+	 * provided DocumentList to the cluster given by assignments. If assignments is null the clusters
+	 * are left empty.
+	 */
+	static ClusterList restore(Vector[] centroids, int[][] signatures, int[] assignments,
+	    DocumentList documentList) {
+		ClusterList clusterList = new ClusterList();
+		Cluster[] clusters = new Cluster[centroids.length];
+		for (int i = 0; i < clusters.length; i++) {
+			clusters[i] = new Cluster(centroids[i], signatures[i]);
+			clusterList.add(clusters[i]);
+		}
+		for (int i = 0; assignments != null && i < assignments.length; i++) {
+			if (assignments[i] >= 0) {
+				clusters[assignments[i]].add(documentList.get(i));
+			}
+		}
+		return clusterList;
+	}
+
+	/** Restore the best ClusterList found so far, or return null if there is none. */
+	public ClusterList restoreBest(DocumentList documentList) {
+		if (bestAssignments == null) {
+			return null;
+		}
+		return restore(bestCentroids, bestSignatures, bestAssignments, documentList);
+	}
+
+	/**
+	 * Write the checkpoint to the provided file. The checkpoint is written to a temporary file which
+	 * then replaces the existing file, so an interrupted write leaves the previous checkpoint intact.
+	 */
+	public void write(File location) throws IOException {
+		File temporary = new File(location.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+		    temporary)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(fingerprint);
+			out.writeUTF(distanceClass);
+			out.writeInt(numFeatures);
+			out.writeDouble(clusteringThreshold);
+			out.writeInt(clusteringIterations);
+			out.writeLong(seed);
+			out.writeInt(k);
+			out.writeInt(iteration);
+			writeVectors(out, centroids);
+			writeSignatures(out, signatures);
+			out.writeDouble(bestRatio);
+			writeVectors(out, bestCentroids);
+			writeSignatures(out, bestSignatures);
+			writeInts(out, bestAssignments);
+		} finally {
+			out.close();
+		}
+		if (!temporary.renameTo(location)) {
+			location.delete();
+			if (!temporary.renameTo(location)) {
+				throw new IOException("Unable to replace " + location);
+			}
+		}
+	}
+
+	/** Write an array of ints, or null. */
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+		if (values == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(values.length);
+		for (int value : values) {
+			out.writeInt(value);
+		}
+	}
+
+	/** Write an array of signatures, or null. */
+	private static void writeSignatures(DataOutputStream out, int[][] signatures) throws IOException {
+		if (signatures == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(signatures.length);
+		for (int[] signature : signatures) {
+			writeInts(out, signature);
+		}
+	}
+
+	/** Write an array of Vectors, or null, storing only the non-zero elements of each Vector. */
+	private static void writeVectors(DataOutputStream out, Vector[] vectors) throws IOException {
+		if (vectors == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(vectors.length);
+		for (Vector vector : vectors) {
+			if (vector == null) {
+				out.writeInt(-1);
+				continue;
+			}
+			out.writeInt(vector.size());
+			int numNonZero = 0;
+			for (int i = 0; i < vector.size(); i++) {
+				if (vector.get(i) != 0) {
+					numNonZero++;
+				}
+			}
+			out.writeInt(numNonZero);
+			for (int i = 0; i < vector.size(); i++) {
+				if (vector.get(i) != 0) {
+					out.writeInt(i);
+					out.writeDouble(vector.get(i));
+				}
+			}
+		}
+	}
+}
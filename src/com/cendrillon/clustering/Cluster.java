@@ -1,18 +1,44 @@
 package com.cendrillon.clustering;
 
+import java.util.Arrays;
+
 /** Class representing a cluster of Documents on related topics. */
 public class Cluster implements Comparable<Cluster> {
 	private Vector centroid;
+	private int[] signature;
 	private final DocumentList documents = new DocumentList();
 	private final int numFeatures;
 
 	/** Construct a cluster with a single member document. */
 	public Cluster(Document document) {
 		add(document);
-		centroid = new Vector(document.getVector());
+		if (document.getVector() != null) {
+			centroid = new Vector(document.getVector());
+		}
+		if (document.getSignature() != null) {
+			signature = Arrays.copyOf(document.getSignature(), document.getSignature().length);
+		}
 		numFeatures = document.getNumFeatures();
 	}
 
+	/**
+	 * Construct an empty cluster with the provided centroid. Used when documents are assigned to
+	 * clusters without their feature vectors being held in memory.
+	 */
+	public Cluster(Vector centroid) {
+		this(centroid, null);
+	}
+
+	/**
+	 * Construct an empty cluster with the provided centroid and signature, either of which may be
+	 * null. Used when restoring clusters from a Checkpoint.
+	 */
+	Cluster(Vector centroid, int[] signature) {
+		this.centroid = centroid;
+		this.signature = signature;
+		numFeatures = centroid == null ? 0 : centroid.size();
+	}
+
 	/** Add document to cluster and mark document as allocated. */
 	public void add(Document document) {
 		document.setIsAllocated();
@@ -44,6 +70,14 @@ public class Cluster implements Comparable<Cluster> {
 		return documents;
 	}
 
+	/**
+	 * Get MinHash signature representing the cluster. Each position holds the most common value at
+	 * that position among the signatures of the member documents.
+	 */
+	public int[] getSignature() {
+		return signature;
+	}
+
 	/** Get the number of documents in the cluster. */
 	public int size() {
 		return documents.size();
@@ -59,12 +93,55 @@ public class Cluster implements Comparable<Cluster> {
 		return documents.toString();
 	}
 
-	/** Update centroids and centroidNorms for this cluster. */
+	/**
+	 * Update centroids and centroidNorms for this cluster. Each document contributes in proportion to
+	 * its weight.
+	 */
 	public void updateCentroid() {
-		centroid = new Vector(numFeatures);
-		for (Document document : documents) {
-			centroid = centroid.add(document.getVector());
+		if (centroid != null) {
+			centroid = new Vector(numFeatures);
+			int totalWeight = 0;
+			for (Document document : documents) {
+				if (document.getWeight() == 1) {
+					centroid = centroid.add(document.getVector());
+				} else {
+					centroid = centroid.add(document.getVector().multiply(document.getWeight()));
+				}
+				totalWeight += document.getWeight();
+			}
+			centroid = centroid.divide(totalWeight);
+		}
+		if (signature != null && !documents.isEmpty()) {
+			updateSignature();
+		}
+	}
+
+	/**
+	 * Update the cluster signature to the value with the highest total document weight at each
+	 * position of the member document signatures. Ties are broken in favour of the smallest value.
+	 */
+	private void updateSignature() {
+		// each entry packs a signature value into the high bits and a document index into the low bits
+		long[] column = new long[size()];
+		for (int i = 0; i < signature.length; i++) {
+			for (int j = 0; j < column.length; j++) {
+				column[j] = ((long) documents.get(j).getSignature()[i] << 32) | j;
+			}
+			Arrays.sort(column);
+			int mostCommonValue = (int) (column[0] >> 32);
+			int mostCommonWeight = 0;
+			int runWeight = 0;
+			for (int j = 0; j < column.length; j++) {
+				runWeight += documents.get((int) column[j]).getWeight();
+				if (j == column.length - 1 || (int) (column[j + 1] >> 32) != (int) (column[j] >> 32)) {
+					if (runWeight > mostCommonWeight) {
+						mostCommonWeight = runWeight;
+						mostCommonValue = (int) (column[j] >> 32);
+					}
+					runWeight = 0;
+				}
+			}
+			signature[i] = mostCommonValue;
 		}
-		centroid = centroid.divide(size());
 	}
 }
@@ -1,9 +1,13 @@
 package com.cendrillon.clustering;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
 
 /**
  * Solution for Newsle Clustering question from CodeSprint 2012. This class implements clustering of
@@ -12,28 +16,223 @@ import java.io.IOException;
  * intracluster to intercluster distance is below a specified threshold.
  */
 public class ClusterDocuments {
+	private static final long CACHE_BUDGET = 256L << 20;
+	private static final long CHECKPOINT_INTERVAL = 60000;
+	private static final long CHUNK_BUDGET = 64L << 20;
 	private static final int CLUSTERING_ITERATIONS = 3;
 	private static final double CLUSTERING_THRESHOLD = 0.3;
+	private static final double DUPLICATE_THRESHOLD = 0.8;
 	private static final int NUM_FEATURES = 10000;
+	private static final int NUM_MINHASH_BANDS = 32;
+	private static final int NUM_MINHASHES = 128;
 
 	/**
 	 * Cluster the text documents in the provided file. The clustering process consists of parsing and
-	 * encoding documents, and then using Clusterer with a specific Distance measure.
+	 * encoding documents, and then using Clusterer with a specific Distance measure. With the -minhash
+	 * option documents are encoded into MinHash signatures and clustered using estimated Jaccard
+	 * distance. With the -collapse option near-duplicate documents are collapsed into a single
+	 * weighted representative before encoding, and expanded again after clustering. With the -spill
+	 * option encoded feature vectors are spilled to the provided file and clustered out of core. With
+	 * the -cache option word histograms are cached in the provided file across runs. With the -metrics
+	 * option instrumentation is enabled and a JSON summary is written to the provided file. Clusters
+	 * are written to standard output, or to the file given with the -output option, in the format
+	 * given with the -format option: text (the default), jsonl or binary. With the -shards option the
+	 * documents are encoded and clustered by the provided number of local worker processes. With the
+	 * -deadline option clustering stops after the provided number of seconds and the best clusters
+	 * found so far are written. With the -checkpoint option clustering progress is written to the
+	 * provided file, and an interrupted run resumes clustering from it. Only clustering progress is
+	 * checkpointed: a resumed run parses and encodes the documents again before the checkpoint is
+	 * checked against them, although -cache avoids tokenizing them again in TF-IDF mode. With the
+	 * -seed option random choices are drawn from the provided seed, so that runs are reproducible.
 	 */
 	public static void main(String[] args) throws IOException {
-		if (args.length != 1) {
-			System.out.println("Usage: ClusterDocuments <filename>\n");
-			System.exit(1);
-		}
-		BufferedReader in = new BufferedReader(new FileReader(new File(args[0])));
-		String input = in.readLine();
-		in.close();
-		DocumentList documentList = new DocumentList(input);
-		Encoder encoder = new TfIdfEncoder(NUM_FEATURES);
-		encoder.encode(documentList);
-		DistanceMetric distance = new CosineDistance();
-		Clusterer clusterer = new KMeansClusterer(distance, CLUSTERING_THRESHOLD, CLUSTERING_ITERATIONS);
-		ClusterList clusterList = clusterer.cluster(documentList);
-		System.out.println(clusterList);
+		boolean useMinHash = false;
+		boolean collapseDuplicates = false;
+		File cacheFile = null;
+		File checkpointFile = null;
+		long timeBudget = 0;
+		File metricsFile = null;
+		File outputFile = null;
+		String format = "text";
+		int numShards = 0;
+		long seed = new Random().nextLong();
+		File spillFile = null;
+		String filename = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-minhash")) {
+				useMinHash = true;
+			} else if (args[i].equals("-collapse")) {
+				collapseDuplicates = true;
+			} else if (args[i].equals("-cache") && i + 1 < args.length) {
+				cacheFile = new File(args[++i]);
+			} else if (args[i].equals("-checkpoint") && i + 1 < args.length) {
+				checkpointFile = new File(args[++i]);
+			} else if (args[i].equals("-deadline") && i + 1 < args.length) {
+				timeBudget = Long.parseLong(args[++i]) * 1000;
+			} else if (args[i].equals("-format") && i + 1 < args.length) {
+				format = args[++i];
+			} else if (args[i].equals("-output") && i + 1 < args.length) {
+				outputFile = new File(args[++i]);
+			} else if (args[i].equals("-metrics") && i + 1 < args.length) {
+				metricsFile = new File(args[++i]);
+			} else if (args[i].equals("-seed") && i + 1 < args.length) {
+				seed = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-shards") && i + 1 < args.length) {
+				numShards = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-spill") && i + 1 < args.length) {
+				spillFile = new File(args[++i]);
+			} else if (filename == null && !args[i].startsWith("-")) {
+				filename = args[i];
+			} else {
+				usage();
+			}
+		}
+		if (filename == null || (useMinHash && (spillFile != null || cacheFile != null))
+		    || (numShards > 0 && (useMinHash || spillFile != null || cacheFile != null))
+		    || ((spillFile != null || numShards > 0) && (checkpointFile != null || timeBudget > 0))
+		    || !(format.equals("text") || format.equals("jsonl") || format.equals("binary"))) {
+			usage();
+		}
+		if (metricsFile != null) {
+			Metrics.setEnabled(true);
+		}
+		NearDuplicateCollapser collapser = null;
+		if (collapseDuplicates) {
+			collapser = new NearDuplicateCollapser(new MinHashEncoder(NUM_MINHASHES, NUM_MINHASH_BANDS),
+			    DUPLICATE_THRESHOLD);
+		}
+		HistogramCache histogramCache = null;
+		if (cacheFile != null) {
+			histogramCache = new HistogramCache(cacheFile, NUM_FEATURES, CACHE_BUDGET);
+		}
+		ClusterList clusterList;
+		if (spillFile != null) {
+			clusterList = clusterOutOfCore(new File(filename), spillFile, collapser, histogramCache,
+			    seed);
+		} else if (numShards > 0) {
+			ShardedKMeansClusterer clusterer = new ShardedKMeansClusterer(new CosineDistance(),
+			    CLUSTERING_THRESHOLD, CLUSTERING_ITERATIONS, NUM_FEATURES, numShards);
+			clusterer.setSeed(seed);
+			DocumentReader reader = new DocumentReader(new File(filename));
+			try {
+				clusterList = clusterer.cluster(reader, collapser);
+			} finally {
+				reader.close();
+			}
+		} else {
+			DocumentList documentList = readDocuments(filename, collapser);
+			Encoder encoder;
+			DistanceMetric distance;
+			if (useMinHash) {
+				MinHashEncoder minHashEncoder = new MinHashEncoder(NUM_MINHASHES, NUM_MINHASH_BANDS);
+				encoder = minHashEncoder;
+				distance = new MinHashJaccardDistance(minHashEncoder);
+			} else {
+				encoder = new TfIdfEncoder(NUM_FEATURES, histogramCache);
+				distance = new CosineDistance();
+			}
+			encoder.encode(documentList);
+			if (histogramCache != null) {
+				histogramCache.save();
+			}
+			KMeansClusterer clusterer = new KMeansClusterer(distance, CLUSTERING_THRESHOLD,
+			    CLUSTERING_ITERATIONS);
+			clusterer.setSeed(seed);
+			clusterer.setTimeBudget(timeBudget);
+			clusterer.setCheckpoint(checkpointFile, CHECKPOINT_INTERVAL);
+			clusterList = clusterer.cluster(documentList);
+		}
+		if (collapser != null) {
+			clusterList = collapser.expand(clusterList);
+		}
+		WritableByteChannel channel = outputFile == null ? Channels.newChannel(System.out)
+		    : new FileOutputStream(outputFile).getChannel();
+		ClusterWriter clusterWriter = createClusterWriter(format, channel);
+		try {
+			clusterWriter.write(clusterList);
+		} finally {
+			// only close the channel if it wraps the output file, so that standard output stays open
+			if (outputFile != null) {
+				clusterWriter.close();
+			} else {
+				clusterWriter.flush();
+				System.out.flush();
+			}
+		}
+		if (metricsFile != null) {
+			Writer out = new FileWriter(metricsFile);
+			try {
+				Metrics.writeSummary(out);
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Stream the documents in the provided input file into the provided spill file, collapsing
+	 * near-duplicates if a collapser is provided, and cluster them with OutOfCoreKMeansClusterer.
+	 * Only the ID, title and weight of each document are held on the heap, together with a chunk of
+	 * feature vectors whose size is bounded by a fixed budget and by the maximum heap size.
+	 */
+	private static ClusterList clusterOutOfCore(File input, File spillFile,
+	    NearDuplicateCollapser collapser, HistogramCache histogramCache, long seed)
+	    throws IOException {
+		VectorFile vectorFile = new VectorFile(spillFile, NUM_FEATURES);
+		try {
+			DocumentList documentList = new TfIdfEncoder(NUM_FEATURES, histogramCache).encode(input,
+			    vectorFile, collapser);
+			if (histogramCache != null) {
+				histogramCache.save();
+			}
+			long chunkBudget = Math.min(CHUNK_BUDGET, Runtime.getRuntime().maxMemory() / 4);
+			OutOfCoreKMeansClusterer clusterer = new OutOfCoreKMeansClusterer(new CosineDistance(),
+			    CLUSTERING_THRESHOLD, CLUSTERING_ITERATIONS, vectorFile, chunkBudget);
+			clusterer.setSeed(seed);
+			return clusterer.cluster(documentList);
+		} finally {
+			vectorFile.close();
+		}
+	}
+
+	/** Create a ClusterWriter for the provided output format. */
+	private static ClusterWriter createClusterWriter(String format, WritableByteChannel channel) {
+		if (format.equals("jsonl")) {
+			return new JsonLinesClusterWriter(channel);
+		} else if (format.equals("binary")) {
+			return new BinaryClusterWriter(channel);
+		} else {
+			return new TextClusterWriter(channel);
+		}
+	}
+
+	/**
+	 * Read and parse the documents in the provided file, and collapse near-duplicates if a collapser
+	 * is provided.
+	 */
+	private static DocumentList readDocuments(String filename, NearDuplicateCollapser collapser)
+	    throws IOException {
+		Metrics.Timer timer = Metrics.start(Metrics.Phase.PARSE);
+		DocumentReader reader = new DocumentReader(new File(filename));
+		DocumentList documentList;
+		try {
+			documentList = new DocumentList(reader);
+		} finally {
+			reader.close();
+		}
+		timer.stop();
+		if (collapser != null) {
+			documentList = collapser.collapse(documentList);
+		}
+		return documentList;
+	}
+
+	/** Print usage and exit. */
+	private static void usage() {
+		System.out.println("Usage: ClusterDocuments [-minhash] [-collapse] [-cache <file>] "
+		    + "[-checkpoint <file>] [-deadline <seconds>] [-format text|jsonl|binary] "
+		    + "[-metrics <file>] [-output <file>] [-seed <n>] [-shards <n>] [-spill <file>] "
+		    + "<filename>\n");
+		System.exit(1);
 	}
-}
\ No newline at end of file
+}
@@ -1,7 +1,11 @@
 package com.cendrillon.clustering;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Iterator;
 
 /** A class for storing a list of clusters. This is the output of the clustering process. */
@@ -32,7 +36,7 @@ public class ClusterList implements Iterable<Cluster> {
 
 	/**
 	 * Calculate average intracluster distance, which is the average distance between the constituent
-	 * documents in a cluster and the cluster centroid.
+	 * documents in a cluster and the cluster centroid. Documents are weighted by their weight.
 	 */
 	private double calcIntraClusterDistance(DistanceMetric distance) {
 		double sumIntraClusterDistance = 0;
@@ -40,9 +44,9 @@ public class ClusterList implements Iterable<Cluster> {
 		for (Cluster cluster : clusters) {
 			double intraClusterDistance = 0;
 			for (Document document : cluster.getDocuments()) {
-				intraClusterDistance += distance.calcDistance(document, cluster);
+				intraClusterDistance += document.getWeight() * distance.calcDistance(document, cluster);
+				numDocuments += document.getWeight();
 			}
-			numDocuments += cluster.size();
 			sumIntraClusterDistance += intraClusterDistance;
 		}
 		return sumIntraClusterDistance / numDocuments;
@@ -95,9 +99,18 @@ public class ClusterList implements Iterable<Cluster> {
 
 	/** Find cluster whose centroid is closest to a document. */
 	public Cluster findNearestCluster(DistanceMetric distance, Document document) {
+		return findNearestCluster(distance, document, clusters);
+	}
+
+	/**
+	 * Find the cluster among the provided candidate clusters whose centroid is closest to a document.
+	 * Returns null if there are no candidates.
+	 */
+	public Cluster findNearestCluster(DistanceMetric distance, Document document,
+	    Iterable<Cluster> candidates) {
 		Cluster nearestCluster = null;
 		double nearestDistance = Double.MAX_VALUE;
-		for (Cluster cluster : clusters) {
+		for (Cluster cluster : candidates) {
 			double clusterDistance = distance.calcDistance(document, cluster);
 			if (clusterDistance < nearestDistance) {
 				nearestDistance = clusterDistance;
@@ -118,30 +131,18 @@ public class ClusterList implements Iterable<Cluster> {
 	}
 
 	/**
-	 * Sort order of documents within each cluster, then sort order of clusters within ClusterList.
-	 */
-	private void sort() {
-		for (Cluster cluster : this) {
-			cluster.sort();
-		}
-		Collections.sort(clusters);
-	}
-
-	/**
-	 * Display clusters in sorted order.
+	 * Display clusters in sorted order. The clusters themselves are not modified. Use a ClusterWriter
+	 * to write large ClusterLists without building the whole string in memory.
 	 */
 	@Override
 	public String toString() {
-		sort();
-		StringBuilder sb = new StringBuilder();
-		int clusterIndex = 0;
-		for (Cluster cluster : clusters) {
-			sb.append("Cluster ");
-			sb.append(clusterIndex++);
-			sb.append("\n");
-			sb.append(cluster);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			new TextClusterWriter(Channels.newChannel(out)).write(this);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
-		return sb.toString();
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
 	}
 
 	/**
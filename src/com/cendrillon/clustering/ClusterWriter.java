@@ -0,0 +1,164 @@
+package com.cendrillon.clustering;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Abstract class for writing a ClusterList to a channel. Clusters are written in order of their
+ * lowest document ID and the documents within each cluster in order of ID, as they are produced,
+ * through a fixed size buffer. Ordering is done by sorting arrays of IDs, so the ClusterList itself
+ * is not modified. Implementations define the output format.
+ */
+public abstract class ClusterWriter implements Closeable {
+	private static final int BUFFER_SIZE = 1 << 16;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final WritableByteChannel channel;
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+	/** Construct a ClusterWriter which writes to the provided channel. */
+	protected ClusterWriter(WritableByteChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * Calculate the order in which to visit the provided keys so that they are in ascending order.
+	 * Keys which are equal keep their original order.
+	 */
+	static int[] sortByKey(long[] keys) {
+		int[] order = new int[keys.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		int[] merged = new int[keys.length];
+		for (int width = 1; width < order.length; width *= 2) {
+			for (int start = 0; start < order.length; start += 2 * width) {
+				int middle = Math.min(start + width, order.length);
+				int end = Math.min(start + 2 * width, order.length);
+				int left = start;
+				int right = middle;
+				for (int i = start; i < end; i++) {
+					if (right >= end || (left < middle && keys[order[left]] <= keys[order[right]])) {
+						merged[i] = order[left++];
+					} else {
+						merged[i] = order[right++];
+					}
+				}
+			}
+			int[] swap = order;
+			order = merged;
+			merged = swap;
+		}
+		return order;
+	}
+
+	/** Flush any buffered output and close the channel. */
+	@Override
+	public void close() throws IOException {
+		flush();
+		channel.close();
+	}
+
+	/** Write any buffered output to the channel. */
+	public void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/** Ensure that the buffer has room for the provided number of bytes. */
+	private void reserve(int numBytes) throws IOException {
+		if (buffer.remaining() < numBytes) {
+			flush();
+		}
+	}
+
+	/**
+	 * Write the provided ClusterList. Clusters are numbered in the order they are written, which is
+	 * the order of their lowest document ID, and empty clusters are written last.
+	 */
+	public void write(ClusterList clusterList) throws IOException {
+		Cluster[] clusters = new Cluster[clusterList.size()];
+		long[] lowestIds = new long[clusters.length];
+		int i = 0;
+		for (Cluster cluster : clusterList) {
+			clusters[i] = cluster;
+			lowestIds[i] = Long.MAX_VALUE;
+			for (Document document : cluster.getDocuments()) {
+				lowestIds[i] = Math.min(lowestIds[i], document.getId());
+			}
+			i++;
+		}
+		writeHeader(clusters.length);
+		int[] clusterOrder = sortByKey(lowestIds);
+		for (int clusterIndex = 0; clusterIndex < clusterOrder.length; clusterIndex++) {
+			DocumentList documents = clusters[clusterOrder[clusterIndex]].getDocuments();
+			long[] ids = new long[documents.size()];
+			for (int j = 0; j < ids.length; j++) {
+				ids[j] = documents.get(j).getId();
+			}
+			writeCluster(clusterIndex, clusters[clusterOrder[clusterIndex]], sortByKey(ids));
+		}
+		writeFooter();
+		flush();
+	}
+
+	/**
+	 * Write a single cluster.
+	 *
+	 * @param clusterIndex the number of the cluster in the output
+	 * @param cluster the cluster to write
+	 * @param order the indices of the documents within the cluster in order of document ID
+	 */
+	protected abstract void writeCluster(int clusterIndex, Cluster cluster, int[] order)
+	    throws IOException;
+
+	/** Write a double in binary form. */
+	protected void writeDouble(double value) throws IOException {
+		reserve(8);
+		buffer.putDouble(value);
+	}
+
+	/** Write anything which follows the clusters. By default nothing is written. */
+	protected void writeFooter() throws IOException {
+	}
+
+	/** Write anything which precedes the clusters. By default nothing is written. */
+	protected void writeHeader(int numClusters) throws IOException {
+	}
+
+	/** Write an int in binary form. */
+	protected void writeInt(int value) throws IOException {
+		reserve(4);
+		buffer.putInt(value);
+	}
+
+	/** Write a long in binary form. */
+	protected void writeLong(long value) throws IOException {
+		reserve(8);
+		buffer.putLong(value);
+	}
+
+	/** Write a string encoded as UTF-8. */
+	protected void writeString(String string) throws IOException {
+		CharBuffer chars = CharBuffer.wrap(string);
+		encoder.reset();
+		while (true) {
+			CoderResult result = encoder.encode(chars, buffer, true);
+			if (result.isOverflow()) {
+				flush();
+			} else if (result.isUnderflow()) {
+				break;
+			} else {
+				result.throwException();
+			}
+		}
+	}
+}
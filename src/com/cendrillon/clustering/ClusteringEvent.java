@@ -0,0 +1,25 @@
+package com.cendrillon.clustering;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Flight Recorder event covering k-means clustering for a single number of clusters k. */
+@Name("com.cendrillon.clustering.Clustering")
+@Label("Clustering Run")
+@Category("Clustering")
+@Description("k-means clustering for a fixed number of clusters")
+class ClusteringEvent extends jdk.jfr.Event {
+	@Label("Clusters")
+	int k;
+
+	@Label("Iterations")
+	int iterations;
+
+	@Label("Intra/Inter Distance Ratio")
+	double ratio;
+
+	@Label("Distance Evaluations")
+	long distanceEvaluations;
+}
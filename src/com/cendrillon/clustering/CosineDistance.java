@@ -4,6 +4,7 @@ package com.cendrillon.clustering;
 public class CosineDistance extends DistanceMetric {
 	@Override
 	protected double calcDistance(Vector vector1, Vector vector2) {
+		countEvaluation();
 		return 1 - vector1.innerProduct(vector2) / vector1.norm() / vector2.norm();
 	}
 }
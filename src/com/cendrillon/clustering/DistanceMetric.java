@@ -6,6 +6,8 @@ package com.cendrillon.clustering;
  * distance between them.
  */
 public abstract class DistanceMetric {
+	private long numEvaluations;
+
 	/** Calculate the distance between two clusters by comparing their centroids. */
 	public double calcDistance(Cluster cluster1, Cluster cluster2) {
 		return calcDistance(cluster1.getCentroid(), cluster2.getCentroid());
@@ -30,4 +32,70 @@ public abstract class DistanceMetric {
 
 	/** Calculate distance between two Vectors. */
 	protected abstract double calcDistance(Vector vector1, Vector vector2);
+
+	/** Calculate the minimum distance between a feature vector and the provided centroids. */
+	double calcDistance(Vector vector, Vector[] centroids) {
+		double distance = Double.MAX_VALUE;
+		for (Vector centroid : centroids) {
+			distance = Math.min(distance, calcDistance(vector, centroid));
+		}
+		return distance;
+	}
+
+	/**
+	 * Calculate average intercluster distance between the provided centroids, as in ClusterList.
+	 */
+	double calcInterClusterDistance(Vector[] centroids) {
+		double sumInterDist = 0;
+		for (int i = 0; i < centroids.length; i++) {
+			for (int j = 0; j < centroids.length; j++) {
+				if (i != j) {
+					sumInterDist += calcDistance(centroids[i], centroids[j]);
+				}
+			}
+		}
+		// there are N * N-1 unique pairs of clusters
+		return sumInterDist / (centroids.length * (centroids.length - 1));
+	}
+
+	/**
+	 * Add distance evaluations made elsewhere on behalf of this DistanceMetric, such as by the workers
+	 * of ShardedKMeansClusterer.
+	 */
+	void addEvaluations(long numEvaluations) {
+		this.numEvaluations += numEvaluations;
+	}
+
+	/** Count a distance evaluation. Called by implementations each time a distance is calculated. */
+	protected void countEvaluation() {
+		numEvaluations++;
+	}
+
+	/**
+	 * Index the clusters in the provided ClusterList so that each document need only be compared
+	 * against the clusters sharing a signature band with it. Returns null by default, in which case
+	 * each document is compared against every cluster.
+	 */
+	public MinHashIndex<Cluster> createClusterIndex(ClusterList clusterList) {
+		return null;
+	}
+
+	/** Find the index of the centroid nearest to the provided feature vector. */
+	int findNearestCentroid(Vector vector, Vector[] centroids) {
+		int nearestCentroid = 0;
+		double nearestDistance = Double.MAX_VALUE;
+		for (int i = 0; i < centroids.length; i++) {
+			double centroidDistance = calcDistance(vector, centroids[i]);
+			if (centroidDistance < nearestDistance) {
+				nearestDistance = centroidDistance;
+				nearestCentroid = i;
+			}
+		}
+		return nearestCentroid;
+	}
+
+	/** Get the number of distance evaluations made by this DistanceMetric. */
+	public long getNumEvaluations() {
+		return numEvaluations;
+	}
 }
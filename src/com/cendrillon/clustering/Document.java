@@ -9,12 +9,14 @@ public class Document implements Comparable<Document> {
 	    .compile("\"content\": \"(.*)\", \"id\": (.*), \"title\": \"(.*)\"");
 	private final String title;
 
-	private final String contents;
+	private String contents;
 	private final long id;
 	private boolean allocated;
 	private Vector histogram;
+	private int[] signature;
 	private Vector vector;
 	private int numFeatures;
+	private int weight = 1;
 
 	/**
 	 * Construct a document by parsing the provided string into document ID, contents and title. The
@@ -61,6 +63,11 @@ public class Document implements Comparable<Document> {
 		return contents;
 	}
 
+	/** Get the document title. */
+	public String getTitle() {
+		return title;
+	}
+
 	/** Get document word histogram. The exact format is determined by the Encoder. */
 	public Vector getHistogram() {
 		return histogram;
@@ -76,6 +83,11 @@ public class Document implements Comparable<Document> {
 		return numFeatures;
 	}
 
+	/** Get MinHash signature of the set of words in the document. Set by MinHashEncoder. */
+	public int[] getSignature() {
+		return signature;
+	}
+
 	/**
 	 * Get feature vector for a document. This is typically a version of the histogram normalized for
 	 * word frequency. The exact format is determined by the Encoder.
@@ -84,11 +96,28 @@ public class Document implements Comparable<Document> {
 		return vector;
 	}
 
+	/**
+	 * Get the weight of the document in centroid calculations. This is the number of documents it
+	 * represents when near-duplicates have been collapsed, and 1 otherwise.
+	 */
+	public int getWeight() {
+		return weight;
+	}
+
 	/** Determine whether document has been allocated to a cluster. */
 	public boolean isAllocated() {
 		return allocated;
 	}
 
+	/**
+	 * Release the contents and histogram of the document once it has been encoded. The feature vector
+	 * is retained.
+	 */
+	public void releaseContents() {
+		contents = null;
+		histogram = null;
+	}
+
 	/** Set the word histogram for a document. */
 	public void setHistogram(Vector histogram) {
 		this.histogram = histogram;
@@ -99,6 +128,11 @@ public class Document implements Comparable<Document> {
 		allocated = true;
 	}
 
+	/** Set the MinHash signature for a document. */
+	public void setSignature(int[] signature) {
+		this.signature = signature;
+	}
+
 	/**
 	 * Set the feature vector for a document.
 	 */
@@ -107,6 +141,11 @@ public class Document implements Comparable<Document> {
 		this.numFeatures = vector.size();
 	}
 
+	/** Set the weight of the document in centroid calculations. */
+	public void setWeight(int weight) {
+		this.weight = weight;
+	}
+
 	@Override
 	public String toString() {
 		return "Document: " + id + ", Title: " + title;
@@ -1,10 +1,12 @@
 package com.cendrillon.clustering;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.StringTokenizer;
 
 /** Class for storing a collection of documents to be clustered. */
 public class DocumentList implements Iterable<Document> {
@@ -20,23 +22,32 @@ public class DocumentList implements Iterable<Document> {
 	 * document records. Each record must be delimited by curly braces {}.
 	 */
 	public DocumentList(String input) {
-		StringTokenizer st = new StringTokenizer(input, "{");
-		int numDocuments = st.countTokens() - 1;
-		String record = st.nextToken(); // skip empty split to left of {
-		for (int i = 0; i < numDocuments; i++) {
-			record = st.nextToken();
-			Document document = Document.createDocument(record);
-			if (document != null) {
-				documents.add(document);
-			}
+		try {
+			addAll(new DocumentReader(new StringReader(input)));
+		} catch (IOException e) {
+			// not thrown when reading from a string
+			throw new UncheckedIOException(e);
 		}
 	}
 
+	/** Construct a DocumentList from all of the documents read by the provided DocumentReader. */
+	public DocumentList(DocumentReader reader) throws IOException {
+		addAll(reader);
+	}
+
 	/** Add a document to the DocumentList. */
 	public void add(Document document) {
 		documents.add(document);
 	}
 
+	/** Add all of the documents read by the provided DocumentReader to the DocumentList. */
+	private void addAll(DocumentReader reader) throws IOException {
+		Document document;
+		while ((document = reader.read()) != null) {
+			documents.add(document);
+		}
+	}
+
 	/** Clear all documents from the DocumentList. */
 	public void clear() {
 		documents.clear();
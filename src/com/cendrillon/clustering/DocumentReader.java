@@ -0,0 +1,112 @@
+package com.cendrillon.clustering;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Class for reading documents one at a time from a stream of document records, so that a corpus
+ * can be processed without holding all of it in memory. Each record must be delimited by curly
+ * braces {}, as in DocumentList, and only the record being parsed is held.
+ */
+public class DocumentReader implements Closeable, Iterable<Document> {
+	private final Reader in;
+	private boolean skippedFirstToken;
+
+	/** Construct a DocumentReader which reads records from the provided Reader. */
+	public DocumentReader(Reader in) {
+		this.in = in instanceof BufferedReader ? in : new BufferedReader(in);
+	}
+
+	/** Construct a DocumentReader which reads records from the provided file. */
+	public DocumentReader(File file) throws IOException {
+		this(new FileReader(file));
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Get an Iterator over the documents remaining to be read, for streaming documents into later
+	 * phases. Each read is timed as the PARSE phase. An IOException while reading is thrown as
+	 * UncheckedIOException.
+	 */
+	@Override
+	public Iterator<Document> iterator() {
+		return new Iterator<Document>() {
+			private Document next;
+
+			@Override
+			public boolean hasNext() {
+				if (next == null) {
+					Metrics.Timer timer = Metrics.start(Metrics.Phase.PARSE);
+					try {
+						next = read();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					} finally {
+						timer.stop();
+					}
+				}
+				return next != null;
+			}
+
+			@Override
+			public Document next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Document document = next;
+				next = null;
+				return document;
+			}
+		};
+	}
+
+	/**
+	 * Read the next record, which is the text up to the next {. Empty records are skipped, as is the
+	 * text to the left of the first {. Returns null at the end of the stream.
+	 */
+	private String nextRecord() throws IOException {
+		StringBuilder record = new StringBuilder();
+		int c;
+		while ((c = in.read()) != -1) {
+			if (c != '{') {
+				record.append((char) c);
+			} else if (record.length() > 0) {
+				if (skippedFirstToken) {
+					return record.toString();
+				}
+				skippedFirstToken = true;
+				record.setLength(0);
+			}
+		}
+		if (record.length() > 0 && skippedFirstToken) {
+			return record.toString();
+		}
+		return null;
+	}
+
+	/**
+	 * Read and parse the next document. Records with an invalid format are skipped. Returns null when
+	 * there are no more documents.
+	 */
+	public Document read() throws IOException {
+		String record;
+		while ((record = nextRecord()) != null) {
+			Document document = Document.createDocument(record);
+			if (document != null) {
+				return document;
+			}
+		}
+		return null;
+	}
+}
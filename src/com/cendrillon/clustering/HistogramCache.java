@@ -0,0 +1,278 @@
+package com.cendrillon.clustering;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * On-disk cache of document word histograms, so that documents which are unchanged between runs do
+ * not need to be tokenized again. Entries are keyed by document ID together with a hash of the
+ * document contents, so a changed document misses the cache. Histograms are stored sparsely with
+ * variable length integers, and the least recently used entries are evicted once the cache exceeds
+ * its size limit.
+ */
+public class HistogramCache {
+	private static final int MAGIC = 0x48495354;
+	private static final int VERSION = 1;
+	private final Map<Key, int[]> entries = new LinkedHashMap<Key, int[]>(16, 0.75f, true);
+	private final File location;
+	private final long maxBytes;
+	private final int numFeatures;
+	private long numBytes;
+	private int numHits;
+	private int numMisses;
+
+	/**
+	 * Construct a cache stored in the provided file, loading any existing entries. Existing entries
+	 * are discarded if they were created for a different number of features or cannot be read.
+	 *
+	 * @param location the file in which the cache is stored
+	 * @param numFeatures the number of features in each histogram
+	 * @param maxBytes the maximum size of the cache file
+	 */
+	public HistogramCache(File location, int numFeatures, long maxBytes) {
+		this.location = location;
+		this.numFeatures = numFeatures;
+		this.maxBytes = maxBytes;
+		if (location.exists()) {
+			try {
+				load();
+			} catch (IOException e) {
+				entries.clear();
+				numBytes = 0;
+			}
+		}
+	}
+
+	/** Calculate a 64 bit FNV-1a hash of the provided contents. Also used by Checkpoint. */
+	static long calcContentHash(String contents) {
+		long hash = 0xCBF29CE484222325L;
+		for (int i = 0; i < contents.length(); i++) {
+			hash = (hash ^ contents.charAt(i)) * 0x100000001B3L;
+		}
+		return hash;
+	}
+
+	/** Calculate the number of bytes used to store an entry with the provided sparse histogram. */
+	private static long calcEntrySize(int[] terms) {
+		long size = 16 + calcVarIntSize(terms.length / 2);
+		int previousIndex = 0;
+		for (int i = 0; i < terms.length; i += 2) {
+			size += calcVarIntSize(terms[i] - previousIndex) + calcVarIntSize(terms[i + 1]);
+			previousIndex = terms[i];
+		}
+		return size;
+	}
+
+	/** Calculate the number of bytes used to store a non-negative variable length integer. */
+	private static int calcVarIntSize(int value) {
+		int size = 1;
+		while ((value >>>= 7) != 0) {
+			size++;
+		}
+		return size;
+	}
+
+	/** Evict least recently used entries until the cache is within its size limit. */
+	private void evict() {
+		Iterator<Map.Entry<Key, int[]>> iterator = entries.entrySet().iterator();
+		while (numBytes > maxBytes && iterator.hasNext()) {
+			numBytes -= calcEntrySize(iterator.next().getValue());
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Get the cached word histogram for the provided document, or null if the document is not in the
+	 * cache or its contents have changed.
+	 */
+	public Vector get(Document document) {
+		int[] terms = entries.get(new Key(document));
+		if (terms == null) {
+			numMisses++;
+			return null;
+		}
+		numHits++;
+		Vector histogram = new Vector(numFeatures);
+		for (int i = 0; i < terms.length; i += 2) {
+			histogram.set(terms[i], terms[i + 1]);
+		}
+		return histogram;
+	}
+
+	/** Get the number of lookups which found a cached histogram. */
+	public int getNumHits() {
+		return numHits;
+	}
+
+	/** Get the number of lookups which did not find a cached histogram. */
+	public int getNumMisses() {
+		return numMisses;
+	}
+
+	/** Load entries from the cache file, in order from least to most recently used. */
+	private void load() throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(location)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != numFeatures) {
+				return;
+			}
+			int numEntries = in.readInt();
+			if (numEntries < 0) {
+				throw new IOException("Invalid number of entries " + numEntries);
+			}
+			for (int i = 0; i < numEntries; i++) {
+				Key key = new Key(in.readLong(), in.readLong());
+				int numTerms = readVarInt(in);
+				if (numTerms > numFeatures) {
+					throw new IOException("Invalid number of terms " + numTerms);
+				}
+				int[] terms = new int[2 * numTerms];
+				int index = 0;
+				for (int j = 0; j < terms.length; j += 2) {
+					int delta = readVarInt(in);
+					index += delta;
+					// indices are stored in increasing order as deltas from the previous index
+					if ((j > 0 && delta == 0) || index < 0 || index >= numFeatures) {
+						throw new IOException("Invalid term index " + index);
+					}
+					terms[j] = index;
+					terms[j + 1] = readVarInt(in);
+				}
+				entries.put(key, terms);
+				numBytes += calcEntrySize(terms);
+			}
+		} finally {
+			in.close();
+		}
+		evict();
+	}
+
+	/** Store the word histogram of the provided document in the cache. */
+	public void put(Document document, Vector histogram) {
+		int numTerms = 0;
+		for (int i = 0; i < histogram.size(); i++) {
+			if (histogram.get(i) > 0) {
+				numTerms++;
+			}
+		}
+		int[] terms = new int[2 * numTerms];
+		int j = 0;
+		for (int i = 0; i < histogram.size(); i++) {
+			if (histogram.get(i) > 0) {
+				terms[j++] = i;
+				terms[j++] = (int) histogram.get(i);
+			}
+		}
+		int[] previous = entries.put(new Key(document), terms);
+		if (previous != null) {
+			numBytes -= calcEntrySize(previous);
+		}
+		numBytes += calcEntrySize(terms);
+		evict();
+	}
+
+	/**
+	 * Read a non-negative variable length integer, throwing IOException if it does not fit in an int.
+	 */
+	private static int readVarInt(DataInputStream in) throws IOException {
+		int value = 0;
+		int shift = 0;
+		int b;
+		do {
+			if (shift > 28) {
+				throw new IOException("Variable length integer too long");
+			}
+			b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		if (value < 0) {
+			throw new IOException("Variable length integer out of range");
+		}
+		return value;
+	}
+
+	/**
+	 * Save the cache to its file. The cache is written to a temporary file which then replaces the
+	 * existing file, so an interrupted save leaves the previous cache intact.
+	 */
+	public void save() throws IOException {
+		File temporary = new File(location.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+		    temporary)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(numFeatures);
+			out.writeInt(entries.size());
+			for (Map.Entry<Key, int[]> entry : entries.entrySet()) {
+				out.writeLong(entry.getKey().id);
+				out.writeLong(entry.getKey().contentHash);
+				int[] terms = entry.getValue();
+				writeVarInt(out, terms.length / 2);
+				int previousIndex = 0;
+				for (int i = 0; i < terms.length; i += 2) {
+					writeVarInt(out, terms[i] - previousIndex);
+					writeVarInt(out, terms[i + 1]);
+					previousIndex = terms[i];
+				}
+			}
+		} finally {
+			out.close();
+		}
+		if (!temporary.renameTo(location)) {
+			location.delete();
+			if (!temporary.renameTo(location)) {
+				throw new IOException("Unable to replace " + location);
+			}
+		}
+	}
+
+	/** Write a non-negative variable length integer. */
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	/** Cache key combining a document ID with a hash of the document contents. */
+	private static final class Key {
+		private final long contentHash;
+		private final long id;
+
+		Key(Document document) {
+			this(document.getId(), calcContentHash(document.getContents()));
+		}
+
+		Key(long id, long contentHash) {
+			this.id = id;
+			this.contentHash = contentHash;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) object;
+			return id == key.id && contentHash == key.contentHash;
+		}
+
+		@Override
+		public int hashCode() {
+			long hash = id * 31 + contentHash;
+			return (int) (hash ^ (hash >>> 32));
+		}
+	}
+}
@@ -4,6 +4,7 @@ package com.cendrillon.clustering;
 public class JaccardDistance extends DistanceMetric {
 	@Override
 	protected double calcDistance(Vector vector1, Vector vector2) {
+		countEvaluation();
 		double innerProduct = vector1.innerProduct(vector2);
 		return Math.abs(1 - innerProduct / (vector1.norm() + vector2.norm() - innerProduct));
 	}
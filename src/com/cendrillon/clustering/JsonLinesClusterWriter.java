@@ -0,0 +1,42 @@
+package com.cendrillon.clustering;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * ClusterWriter which writes one JSON object per line for each document, holding the document ID,
+ * cluster number and title. Titles are written as they appeared in the JSON input, so they are
+ * already escaped apart from control characters.
+ */
+public class JsonLinesClusterWriter extends ClusterWriter {
+	/** Construct a JsonLinesClusterWriter which writes to the provided channel. */
+	public JsonLinesClusterWriter(WritableByteChannel channel) {
+		super(channel);
+	}
+
+	/** Escape control characters, which may not appear unescaped within a JSON string. */
+	private static String escapeControlCharacters(String string) {
+		StringBuilder sb = null;
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			if (c < 0x20) {
+				if (sb == null) {
+					sb = new StringBuilder(string.substring(0, i));
+				}
+				sb.append(String.format("\\u%04x", (int) c));
+			} else if (sb != null) {
+				sb.append(c);
+			}
+		}
+		return sb == null ? string : sb.toString();
+	}
+
+	@Override
+	protected void writeCluster(int clusterIndex, Cluster cluster, int[] order) throws IOException {
+		for (int i : order) {
+			Document document = cluster.getDocuments().get(i);
+			writeString("{\"id\": " + document.getId() + ", \"cluster\": " + clusterIndex
+			    + ", \"title\": \"" + escapeControlCharacters(document.getTitle()) + "\"}\n");
+		}
+	}
+}
@@ -1,17 +1,32 @@
 package com.cendrillon.clustering;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Random;
 
-/** A Clusterer implementation based on k-means clustering. */
+/**
+ * A Clusterer implementation based on k-means clustering. Optionally clustering is bounded by a
+ * time budget, after which the best ClusterList found so far is returned, and progress is
+ * periodically written to a Checkpoint from which an interrupted run resumes.
+ */
 public class KMeansClusterer implements Clusterer {
-	private static final Random RANDOM = new Random();
 	private final double clusteringThreshold;
 	private final int clusteringIterations;
 	private final DistanceMetric distance;
+	private ClusterList bestClusterList;
+	private double bestRatio;
+	private File checkpointFile;
+	private long checkpointInterval;
+	private long fingerprint;
+	private long lastCheckpointTime;
+	private int numIterations;
+	private long seed = new Random().nextLong();
+	private long timeBudget;
 
 	/**
 	 * Construct a Clusterer.
-	 * 
+	 *
 	 * @param distance the distance metric to use for clustering
 	 * @param clusteringThreshold the threshold used to determine the number of clusters k
 	 * @param clusteringIterations the number of iterations to use in k-means clustering
@@ -25,12 +40,22 @@ public class KMeansClusterer implements Clusterer {
 
 	/**
 	 * Allocate any unallocated documents in the provided DocumentList to the nearest cluster in the
-	 * provided ClusterList.
+	 * provided ClusterList. If the distance metric creates an index of the clusters, each document is
+	 * only compared against the clusters sharing a band with it, falling back to all clusters when
+	 * there are none.
 	 */
 	private void allocatedUnallocatedDocuments(DocumentList documentList, ClusterList clusterList) {
+		MinHashIndex<Cluster> index = distance.createClusterIndex(clusterList);
 		for (Document document : documentList) {
 			if (!document.isAllocated()) {
-				Cluster nearestCluster = clusterList.findNearestCluster(distance, document);
+				Cluster nearestCluster = null;
+				if (index != null) {
+					nearestCluster = clusterList.findNearestCluster(distance, document,
+					    index.findCandidates(document.getSignature()));
+				}
+				if (nearestCluster == null) {
+					nearestCluster = clusterList.findNearestCluster(distance, document);
+				}
 				nearestCluster.add(document);
 			}
 		}
@@ -39,16 +64,60 @@ public class KMeansClusterer implements Clusterer {
 	/**
 	 * Run k-means clustering on the provided documentList. Number of clusters k is set to the lowest
 	 * value that ensures the intracluster to intercluster distance ratio is below
-	 * clusteringThreshold.
+	 * clusteringThreshold. If the time budget runs out first, the ClusterList with the lowest ratio
+	 * found so far is returned. If a checkpoint for the same documents exists, clustering resumes
+	 * from it. The documents must already have been encoded, since only clustering progress is held
+	 * by a checkpoint.
 	 */
 	@Override
 	public ClusterList cluster(DocumentList documentList) {
+		Metrics.register(distance);
+		long deadline = timeBudget > 0 ? System.currentTimeMillis() + timeBudget : Long.MAX_VALUE;
+		fingerprint = checkpointFile == null ? 0 : Checkpoint.calcFingerprint(documentList);
+		lastCheckpointTime = System.currentTimeMillis();
+		bestClusterList = null;
+		bestRatio = Double.MAX_VALUE;
+		Checkpoint checkpoint = readCheckpoint(documentList);
+		int firstK = 1;
+		if (checkpoint != null) {
+			seed = checkpoint.seed;
+			firstK = checkpoint.k;
+			bestClusterList = checkpoint.restoreBest(documentList);
+			bestRatio = checkpoint.bestRatio;
+		}
 		ClusterList clusterList = null;
-		for (int k = 1; k <= documentList.size(); k++) {
-			clusterList = runKMeansClustering(documentList, k);
-			if (clusterList.calcIntraInterDistanceRatio(distance) < clusteringThreshold) {
+		for (int k = firstK; k <= documentList.size(); k++) {
+			long numEvaluations = distance.getNumEvaluations();
+			Checkpoint resumeFrom = checkpoint != null && checkpoint.k == k ? checkpoint : null;
+			// always complete at least one k so there is a ClusterList to return
+			clusterList = runKMeansClustering(documentList, k, resumeFrom,
+			    bestClusterList == null ? Long.MAX_VALUE : deadline);
+			if (clusterList == null) {
+				Metrics.recordClustering(k, numIterations, Double.NaN, distance.getNumEvaluations()
+				    - numEvaluations);
+				return bestClusterList;
+			}
+			Metrics.Timer timer = Metrics.start(Metrics.Phase.QUALITY);
+			double ratio = clusterList.calcIntraInterDistanceRatio(distance);
+			timer.stop();
+			Metrics.recordClustering(k, numIterations, ratio, distance.getNumEvaluations()
+			    - numEvaluations);
+			if (bestClusterList == null || ratio < bestRatio) {
+				bestClusterList = clusterList;
+				bestRatio = ratio;
+			}
+			if (ratio < clusteringThreshold) {
 				break;
 			}
+			if (k < documentList.size()) {
+				writeCheckpoint(documentList, k + 1, 0, null);
+				if (System.currentTimeMillis() >= deadline) {
+					return bestClusterList;
+				}
+			}
+		}
+		if (checkpointFile != null) {
+			checkpointFile.delete();
 		}
 		return clusterList;
 	}
@@ -62,27 +131,146 @@ public class KMeansClusterer implements Clusterer {
 	}
 
 	/** Create a cluster with a single randomly seelcted document from the provided DocumentList. */
-	private Cluster createClusterWithRandomlySelectedDocument(DocumentList documentList) {
-		int rndDocIndex = RANDOM.nextInt(documentList.size());
+	private Cluster createClusterWithRandomlySelectedDocument(DocumentList documentList,
+	    Random random) {
+		int rndDocIndex = random.nextInt(documentList.size());
 		Cluster initialCluster = new Cluster(documentList.get(rndDocIndex));
 		return initialCluster;
 	}
 
-	/** Run k means clustering on the provided DocumentList for a fixed number of clusters k. */
-	private ClusterList runKMeansClustering(DocumentList documentList, int k) {
-		ClusterList clusterList = new ClusterList();
+	/**
+	 * Read the checkpoint file, returning null if there is no checkpoint or it was taken for
+	 * different documents, a different distance metric or encoding, or different clustering
+	 * parameters.
+	 */
+	private Checkpoint readCheckpoint(DocumentList documentList) {
+		if (checkpointFile == null || documentList.isEmpty()) {
+			return null;
+		}
+		Checkpoint checkpoint = Checkpoint.read(checkpointFile);
+		if (checkpoint == null || checkpoint.fingerprint != fingerprint
+		    || !checkpoint.distanceClass.equals(distance.getClass().getName())
+		    || checkpoint.numFeatures != documentList.getNumFeatures()
+		    || checkpoint.clusteringThreshold != clusteringThreshold
+		    || checkpoint.clusteringIterations != clusteringIterations
+		    || !checkpoint.isConsistentWith(documentList)) {
+			return null;
+		}
+		return checkpoint;
+	}
+
+	/**
+	 * Run k means clustering on the provided DocumentList for a fixed number of clusters k. If a
+	 * checkpoint taken part way through k is provided, clustering continues from its centroids.
+	 * Returns null if the deadline passes before clustering completes. The number of iterations run
+	 * is left in numIterations.
+	 */
+	private ClusterList runKMeansClustering(DocumentList documentList, int k, Checkpoint resumeFrom,
+	    long deadline) {
+		Metrics.Timer timer = Metrics.start(Metrics.Phase.SEED);
+		ClusterList clusterList;
+		int firstIteration = 0;
+		numIterations = 0;
 		documentList.clearIsAllocated();
-		clusterList.add(createClusterWithRandomlySelectedDocument(documentList));
-		while (clusterList.size() < k) {
-			clusterList.add(createClusterFromFurthestDocument(documentList, clusterList));
+		if (resumeFrom != null && resumeFrom.centroids != null) {
+			clusterList = Checkpoint.restore(resumeFrom.centroids, resumeFrom.signatures, null,
+			    documentList);
+			firstIteration = resumeFrom.iteration;
+		} else {
+			// draw random numbers for each k from the seed, so a resumed run makes the same choices
+			Random random = new Random(seed + k);
+			clusterList = new ClusterList();
+			clusterList.add(createClusterWithRandomlySelectedDocument(documentList, random));
+			while (clusterList.size() < k) {
+				if (System.currentTimeMillis() >= deadline) {
+					return null;
+				}
+				clusterList.add(createClusterFromFurthestDocument(documentList, clusterList));
+			}
 		}
-		for (int iter = 0; iter < clusteringIterations; iter++) {
+		timer.stop();
+		for (int iter = firstIteration; iter < clusteringIterations; iter++) {
+			timer = Metrics.start(Metrics.Phase.ASSIGN);
 			allocatedUnallocatedDocuments(documentList, clusterList);
+			timer.stop();
+			timer = Metrics.start(Metrics.Phase.UPDATE);
 			clusterList.updateCentroids();
+			timer.stop();
+			numIterations++;
 			if (iter < clusteringIterations - 1) {
 				clusterList.clear();
+				boolean deadlinePassed = System.currentTimeMillis() >= deadline;
+				if (deadlinePassed
+				    || System.currentTimeMillis() - lastCheckpointTime >= checkpointInterval) {
+					writeCheckpoint(documentList, k, iter + 1, clusterList);
+				}
+				if (deadlinePassed) {
+					return null;
+				}
 			}
 		}
 		return clusterList;
 	}
+
+	/**
+	 * Write progress to the checkpoint file after each k, and at most once per checkpoint interval
+	 * during iterations.
+	 *
+	 * @param checkpointFile the file to write checkpoints to, or null to disable checkpoints
+	 * @param checkpointInterval the minimum number of milliseconds between checkpoints taken during
+	 *          the iterations for a single k
+	 */
+	public void setCheckpoint(File checkpointFile, long checkpointInterval) {
+		this.checkpointFile = checkpointFile;
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	/**
+	 * Set the seed from which random numbers for each number of clusters k are drawn. A run resumed
+	 * from a checkpoint uses the seed of the checkpoint.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Set the number of milliseconds clustering may take before the best ClusterList found so far is
+	 * returned. A time budget of 0 disables the deadline.
+	 */
+	public void setTimeBudget(long timeBudget) {
+		this.timeBudget = timeBudget;
+	}
+
+	/**
+	 * Write a checkpoint of the best ClusterList found so far, together with the centroids of the
+	 * provided ClusterList for k if k is in progress.
+	 */
+	private void writeCheckpoint(DocumentList documentList, int k, int iteration,
+	    ClusterList clusterList) {
+		if (checkpointFile == null) {
+			return;
+		}
+		Vector[] centroids = null;
+		int[][] signatures = null;
+		if (clusterList != null) {
+			centroids = Checkpoint.getCentroids(clusterList);
+			signatures = Checkpoint.getSignatures(clusterList);
+		}
+		Vector[] bestCentroids = null;
+		int[][] bestSignatures = null;
+		int[] bestAssignments = null;
+		if (bestClusterList != null) {
+			bestCentroids = Checkpoint.getCentroids(bestClusterList);
+			bestSignatures = Checkpoint.getSignatures(bestClusterList);
+			bestAssignments = Checkpoint.getAssignments(bestClusterList, documentList);
+		}
+		try {
+			new Checkpoint(fingerprint, distance.getClass().getName(), documentList.getNumFeatures(),
+			    clusteringThreshold, clusteringIterations, seed, k, iteration, centroids, signatures,
+			    bestRatio, bestCentroids, bestSignatures, bestAssignments).write(checkpointFile);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		lastCheckpointTime = System.currentTimeMillis();
+	}
 }
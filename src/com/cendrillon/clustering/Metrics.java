@@ -0,0 +1,204 @@
+package com.cendrillon.clustering;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Instrumentation of the clustering pipeline. Records the time and allocation of each phase, the
+ * outcome of clustering for each number of clusters k, the number of distance evaluations of each
+ * DistanceMetric and the hits and misses of the HistogramCache. Measurements are emitted as Flight Recorder events and can be written as a
+ * JSON summary at the end of a run. When disabled, timers are a shared no-op instance and nothing
+ * is recorded.
+ */
+public final class Metrics {
+	/** Phases of the clustering pipeline. */
+	public enum Phase {
+		PARSE, TOKENIZE, IDF, ENCODE, SEED, ASSIGN, UPDATE, QUALITY
+	}
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	private static final int NUM_PHASES = Phase.values().length;
+	private static final long[] phaseAllocatedBytes = new long[NUM_PHASES];
+	private static final long[] phaseCounts = new long[NUM_PHASES];
+	private static final long[] phaseNanos = new long[NUM_PHASES];
+	private static final List<ClusteringEvent> clusterings = new ArrayList<ClusteringEvent>();
+	private static final List<DistanceMetric> distanceMetrics = new ArrayList<DistanceMetric>();
+	private static boolean enabled = Boolean.getBoolean("com.cendrillon.clustering.metrics");
+	private static HistogramCache histogramCache;
+
+	private Metrics() {
+	}
+
+	/**
+	 * Get the number of bytes allocated by the current thread, or 0 if the JVM does not support
+	 * measuring allocation.
+	 */
+	private static long getAllocatedBytes() {
+		if (THREADS instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread
+			    .currentThread().getId());
+		}
+		return 0;
+	}
+
+	/** Determine whether instrumentation is enabled. */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Record the outcome of k-means clustering for a single number of clusters k.
+	 *
+	 * @param k the number of clusters
+	 * @param iterations the number of k-means iterations run, which excludes iterations completed
+	 *          before resuming from a checkpoint
+	 * @param ratio the resulting intracluster to intercluster distance ratio, or NaN if clustering
+	 *          was cut short by a deadline
+	 * @param distanceEvaluations the number of distance evaluations made
+	 */
+	public static void recordClustering(int k, int iterations, double ratio,
+	    long distanceEvaluations) {
+		if (!enabled) {
+			return;
+		}
+		ClusteringEvent event = new ClusteringEvent();
+		event.k = k;
+		event.iterations = iterations;
+		event.ratio = ratio;
+		event.distanceEvaluations = distanceEvaluations;
+		event.commit();
+		clusterings.add(event);
+	}
+
+	/** Register a DistanceMetric whose number of evaluations is reported in the summary. */
+	public static void register(DistanceMetric distance) {
+		if (enabled && !distanceMetrics.contains(distance)) {
+			distanceMetrics.add(distance);
+		}
+	}
+
+	/**
+	 * Register the HistogramCache whose hits and misses are reported in the summary. The summary
+	 * reports null if no cache is registered.
+	 */
+	public static void register(HistogramCache cache) {
+		if (enabled) {
+			histogramCache = cache;
+		}
+	}
+
+	/** Enable or disable instrumentation. */
+	public static void setEnabled(boolean enabled) {
+		Metrics.enabled = enabled;
+	}
+
+	/** Start timing an execution of the provided phase. */
+	public static Timer start(Phase phase) {
+		return enabled ? new Timer(phase) : Timer.DISABLED;
+	}
+
+	/**
+	 * Write a number as a JSON value. Non-finite numbers, and Double.MAX_VALUE which clusterers return
+	 * as the ratio for a single cluster, are written as null.
+	 */
+	private static void writeNumber(Writer out, double value) throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value) || value == Double.MAX_VALUE) {
+			out.write("null");
+		} else {
+			out.write(String.valueOf(value));
+		}
+	}
+
+	/** Write a JSON summary of all measurements recorded so far. */
+	public static void writeSummary(Writer out) throws IOException {
+		out.write("{\n  \"phases\": {");
+		for (Phase phase : Phase.values()) {
+			int i = phase.ordinal();
+			out.write(i == 0 ? "\n" : ",\n");
+			out.write(String.format(Locale.ROOT,
+			    "    \"%s\": {\"count\": %d, \"nanos\": %d, \"allocatedBytes\": %d}", phase.name()
+			        .toLowerCase(Locale.ROOT), phaseCounts[i], phaseNanos[i], phaseAllocatedBytes[i]));
+		}
+		out.write("\n  },\n  \"distanceEvaluations\": {");
+		for (int i = 0; i < distanceMetrics.size(); i++) {
+			DistanceMetric distance = distanceMetrics.get(i);
+			out.write(i == 0 ? "\n" : ",\n");
+			out.write(String.format(Locale.ROOT, "    \"%s\": %d", distance.getClass().getSimpleName(),
+			    distance.getNumEvaluations()));
+		}
+		out.write("\n  },\n  \"histogramCache\": ");
+		if (histogramCache == null) {
+			out.write("null");
+		} else {
+			out.write(String.format(Locale.ROOT, "{\"hits\": %d, \"misses\": %d}", histogramCache
+			    .getNumHits(), histogramCache.getNumMisses()));
+		}
+		out.write(",\n  \"clusterings\": [");
+		for (int i = 0; i < clusterings.size(); i++) {
+			ClusteringEvent clustering = clusterings.get(i);
+			out.write(i == 0 ? "\n" : ",\n");
+			out.write(String.format(Locale.ROOT,
+			    "    {\"k\": %d, \"iterations\": %d, \"distanceEvaluations\": %d, \"ratio\": ",
+			    clustering.k, clustering.iterations, clustering.distanceEvaluations));
+			writeNumber(out, clustering.ratio);
+			out.write("}");
+		}
+		long gcCount = 0;
+		long gcMillis = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcCount += Math.max(0, collector.getCollectionCount());
+			gcMillis += Math.max(0, collector.getCollectionTime());
+		}
+		out.write("\n  ],\n  \"memory\": ");
+		out.write(String.format(Locale.ROOT, "{\"allocatedBytes\": %d, \"heapUsedBytes\": %d, "
+		    + "\"gcCount\": %d, \"gcMillis\": %d}\n}\n", getAllocatedBytes(), ManagementFactory
+		    .getMemoryMXBean().getHeapMemoryUsage().getUsed(), gcCount, gcMillis));
+		out.flush();
+	}
+
+	/** Timer for a single execution of a phase. Stopping the timer records the measurement. */
+	public static final class Timer {
+		private static final Timer DISABLED = new Timer();
+		private final PhaseEvent event;
+		private final Phase phase;
+		private final long startAllocatedBytes;
+		private final long startNanos;
+
+		private Timer() {
+			event = null;
+			phase = null;
+			startAllocatedBytes = 0;
+			startNanos = 0;
+		}
+
+		private Timer(Phase phase) {
+			this.phase = phase;
+			event = new PhaseEvent();
+			event.begin();
+			startAllocatedBytes = getAllocatedBytes();
+			startNanos = System.nanoTime();
+		}
+
+		/** Stop the timer and record the time and allocation of the phase. */
+		public void stop() {
+			if (phase == null) {
+				return;
+			}
+			long nanos = System.nanoTime() - startNanos;
+			long allocatedBytes = getAllocatedBytes() - startAllocatedBytes;
+			int i = phase.ordinal();
+			phaseCounts[i]++;
+			phaseNanos[i] += nanos;
+			phaseAllocatedBytes[i] += allocatedBytes;
+			event.phase = phase.name();
+			event.allocatedBytes = allocatedBytes;
+			event.commit();
+		}
+	}
+}
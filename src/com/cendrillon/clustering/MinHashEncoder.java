@@ -0,0 +1,120 @@
+package com.cendrillon.clustering;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Implementation of Encoder which encodes the set of words in each document into a compact MinHash
+ * signature. The fraction of positions at which two signatures agree is an unbiased estimate of the
+ * Jaccard similarity of the underlying word sets, so comparing documents costs O(signature length)
+ * regardless of vocabulary size. Signatures are split into bands to support locality sensitive
+ * hashing of candidate pairs, see MinHashIndex.
+ */
+public class MinHashEncoder implements Encoder {
+	private static final long SEED = 0x2545F4914F6CDD1DL;
+	private final int numHashes;
+	private final int numBands;
+	private final long[] hashSeeds;
+
+	/**
+	 * Construct a MinHash encoder.
+	 *
+	 * @param numHashes the number of hash functions, which is the length of each signature
+	 * @param numBands the number of bands the signature is split into for candidate pruning. Must
+	 *          divide numHashes.
+	 */
+	public MinHashEncoder(int numHashes, int numBands) {
+		if (numHashes <= 0 || numBands <= 0 || numHashes % numBands != 0) {
+			throw new IllegalArgumentException("numBands must divide numHashes");
+		}
+		this.numHashes = numHashes;
+		this.numBands = numBands;
+		hashSeeds = new long[numHashes];
+		Random random = new Random(SEED);
+		for (int i = 0; i < numHashes; i++) {
+			hashSeeds[i] = random.nextLong();
+		}
+	}
+
+	/**
+	 * Estimate the Jaccard similarity of the word sets underlying two signatures as the fraction of
+	 * positions at which the signatures agree.
+	 */
+	public static double calcSimilarity(int[] signature1, int[] signature2) {
+		int numEqual = 0;
+		for (int i = 0; i < signature1.length; i++) {
+			if (signature1[i] == signature2[i]) {
+				numEqual++;
+			}
+		}
+		return (double) numEqual / signature1.length;
+	}
+
+	/**
+	 * Calculate one key per band of the provided signature. Two signatures which share a key agree on
+	 * every position of that band, and are therefore candidates for being similar.
+	 */
+	public long[] calcBandKeys(int[] signature) {
+		int rowsPerBand = numHashes / numBands;
+		long[] keys = new long[numBands];
+		for (int band = 0; band < numBands; band++) {
+			long key = band;
+			for (int row = band * rowsPerBand; row < (band + 1) * rowsPerBand; row++) {
+				key = mix(key * 31 + signature[row]);
+			}
+			keys[band] = key;
+		}
+		return keys;
+	}
+
+	/**
+	 * Calculate MinHash signature for the provided document from the set of words in its contents.
+	 */
+	void encode(Document document) {
+		// repeated words do not change the signature, so hash each distinct word only once
+		Set<String> words = new HashSet<String>(Arrays.asList(document.getContents().split(
+		    "[^\\w]+")));
+		words.remove("");
+		int[] signature = new int[numHashes];
+		Arrays.fill(signature, Integer.MAX_VALUE);
+		for (String word : words) {
+			int wordHash = word.hashCode();
+			for (int j = 0; j < numHashes; j++) {
+				int value = (int) mix(wordHash ^ hashSeeds[j]);
+				if (value < signature[j]) {
+					signature[j] = value;
+				}
+			}
+		}
+		document.setSignature(signature);
+	}
+
+	/** Encode all documents within the provided DocumentList. */
+	@Override
+	public void encode(DocumentList documentList) {
+		Metrics.Timer timer = Metrics.start(Metrics.Phase.TOKENIZE);
+		for (Document document : documentList) {
+			encode(document);
+		}
+		timer.stop();
+	}
+
+	/** Get the number of bands used for candidate pruning. */
+	public int getNumBands() {
+		return numBands;
+	}
+
+	/** Get the number of hash functions, which is the length of each signature. */
+	public int getNumHashes() {
+		return numHashes;
+	}
+
+	/** Scramble the bits of a 64 bit value. Used as a family of hash functions over words. */
+	private static long mix(long value) {
+		value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+		value = (value ^ (value >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return value ^ (value >>> 33);
+	}
+}
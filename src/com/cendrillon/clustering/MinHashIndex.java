@@ -0,0 +1,55 @@
+package com.cendrillon.clustering;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Locality sensitive hashing index over MinHash signatures. Items are bucketed by the keys of each
+ * signature band, so that only items sharing at least one band need to be compared. Used to find
+ * near-duplicate Documents, and to limit the Clusters compared against each Document in k-means.
+ */
+public class MinHashIndex<T> {
+	private final Map<Long, List<T>> buckets = new HashMap<Long, List<T>>();
+	private final MinHashEncoder encoder;
+
+	/** Construct an empty index using the band layout of the provided encoder. */
+	public MinHashIndex(MinHashEncoder encoder) {
+		this.encoder = encoder;
+	}
+
+	/** Add an item with the provided signature, which must have been calculated by the encoder. */
+	public void add(T item, int[] signature) {
+		for (long key : encoder.calcBandKeys(signature)) {
+			List<T> bucket = buckets.get(key);
+			if (bucket == null) {
+				bucket = new ArrayList<T>();
+				buckets.put(key, bucket);
+			}
+			bucket.add(item);
+		}
+	}
+
+	/**
+	 * Find the items in the index which share at least one band with the provided signature. Each
+	 * candidate is returned only once.
+	 */
+	public List<T> findCandidates(int[] signature) {
+		Map<T, Boolean> seen = new IdentityHashMap<T, Boolean>();
+		List<T> candidates = new ArrayList<T>();
+		for (long key : encoder.calcBandKeys(signature)) {
+			List<T> bucket = buckets.get(key);
+			if (bucket == null) {
+				continue;
+			}
+			for (T candidate : bucket) {
+				if (seen.put(candidate, Boolean.TRUE) == null) {
+					candidates.add(candidate);
+				}
+			}
+		}
+		return candidates;
+	}
+}
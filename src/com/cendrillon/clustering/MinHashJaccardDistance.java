@@ -0,0 +1,53 @@
+package com.cendrillon.clustering;
+
+/**
+ * Class for estimating Jaccard distance from MinHash signatures. Documents must have been encoded
+ * with MinHashEncoder. Each comparison costs O(signature length) regardless of vocabulary size. If
+ * constructed with the encoder, clusters can be indexed by signature band so that each document is
+ * only compared against the clusters it shares a band with.
+ */
+public class MinHashJaccardDistance extends JaccardDistance {
+	private final MinHashEncoder encoder;
+
+	/** Construct a distance metric which compares each document against every cluster. */
+	public MinHashJaccardDistance() {
+		this(null);
+	}
+
+	/**
+	 * Construct a distance metric which indexes clusters using the band layout of the provided
+	 * encoder, which must be the encoder used to encode the documents.
+	 */
+	public MinHashJaccardDistance(MinHashEncoder encoder) {
+		this.encoder = encoder;
+	}
+
+	@Override
+	public double calcDistance(Cluster cluster1, Cluster cluster2) {
+		countEvaluation();
+		return 1 - MinHashEncoder.calcSimilarity(cluster1.getSignature(), cluster2.getSignature());
+	}
+
+	@Override
+	public double calcDistance(Document document, Cluster cluster) {
+		countEvaluation();
+		return 1 - MinHashEncoder.calcSimilarity(document.getSignature(), cluster.getSignature());
+	}
+
+	/**
+	 * Index the clusters in the provided ClusterList by the bands of their signatures, or return null
+	 * if this distance metric was constructed without an encoder. The index must be rebuilt whenever
+	 * the cluster signatures are updated.
+	 */
+	@Override
+	public MinHashIndex<Cluster> createClusterIndex(ClusterList clusterList) {
+		if (encoder == null) {
+			return null;
+		}
+		MinHashIndex<Cluster> index = new MinHashIndex<Cluster>(encoder);
+		for (Cluster cluster : clusterList) {
+			index.add(cluster, cluster.getSignature());
+		}
+		return index;
+	}
+}
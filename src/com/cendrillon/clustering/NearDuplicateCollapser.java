@@ -0,0 +1,147 @@
+package com.cendrillon.clustering;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optional pipeline stage which collapses groups of near-duplicate documents, such as syndicated
+ * copies of the same article, into a single weighted representative before encoding and clustering.
+ * Near-duplicates are detected by comparing MinHash signatures of documents which share a signature
+ * band. After clustering, the duplicates are expanded back into the cluster of their representative.
+ */
+public class NearDuplicateCollapser {
+	private final Map<Document, DocumentList> duplicates = new IdentityHashMap<Document, DocumentList>();
+	private final MinHashEncoder encoder;
+	private MinHashIndex<Document> index;
+	private final List<Document> representatives = new ArrayList<Document>();
+	private final double similarityThreshold;
+
+	/**
+	 * Construct a NearDuplicateCollapser.
+	 *
+	 * @param encoder the encoder used to calculate document signatures
+	 * @param similarityThreshold the minimum estimated Jaccard similarity for two documents to be
+	 *          considered near-duplicates
+	 */
+	public NearDuplicateCollapser(MinHashEncoder encoder, double similarityThreshold) {
+		this.encoder = encoder;
+		this.similarityThreshold = similarityThreshold;
+		clear();
+	}
+
+	/**
+	 * Add a single document, comparing it against the representatives added so far. Returns true if
+	 * the document becomes a new representative, or false if it is collapsed into the weight of an
+	 * existing representative, in which case it is expanded again by expand. Allows near-duplicates
+	 * to be collapsed as documents are streamed, without holding the contents of earlier documents.
+	 * The signature of a collapsed document is released immediately, and those of the representatives
+	 * when finish is called after the last document has been added.
+	 */
+	public boolean add(Document document) {
+		encoder.encode(document);
+		Document representative = findRepresentative(document);
+		if (representative == null) {
+			index.add(document, document.getSignature());
+			representatives.add(document);
+			return true;
+		}
+		document.setSignature(null);
+		DocumentList group = duplicates.get(representative);
+		if (group == null) {
+			group = new DocumentList();
+			duplicates.put(representative, group);
+		}
+		group.add(document);
+		representative.setWeight(representative.getWeight() + document.getWeight());
+		return false;
+	}
+
+	/** Forget all representatives and near-duplicates added so far. */
+	private void clear() {
+		duplicates.clear();
+		representatives.clear();
+		index = new MinHashIndex<Document>(encoder);
+	}
+
+	/**
+	 * Collapse near-duplicates in the provided DocumentList. Returns a DocumentList containing one
+	 * representative per group of near-duplicates, whose weight is the total weight of the group.
+	 * Documents are compared only against existing representatives, so each document joins the most
+	 * similar representative seen before it.
+	 */
+	public DocumentList collapse(DocumentList documentList) {
+		Metrics.Timer timer = Metrics.start(Metrics.Phase.TOKENIZE);
+		clear();
+		DocumentList representatives = new DocumentList();
+		DocumentList collapsed = new DocumentList();
+		for (Document document : documentList) {
+			if (add(document)) {
+				collapsed.add(document);
+			}
+		}
+		finish();
+		timer.stop();
+		return collapsed;
+	}
+
+	/**
+	 * Expand collapsed near-duplicates back into the clusters of their representatives. The weight of
+	 * each representative is restored and duplicates share the feature vector of their representative.
+	 */
+	public ClusterList expand(ClusterList clusterList) {
+		for (Cluster cluster : clusterList) {
+			List<Document> members = new ArrayList<Document>();
+			for (Document document : cluster.getDocuments()) {
+				members.add(document);
+			}
+			for (Document representative : members) {
+				DocumentList group = duplicates.get(representative);
+				if (group == null) {
+					continue;
+				}
+				for (Document document : group) {
+					if (document.getVector() == null && representative.getVector() != null) {
+						document.setVector(representative.getVector());
+					}
+					representative.setWeight(representative.getWeight() - document.getWeight());
+					cluster.add(document);
+				}
+			}
+		}
+		clear();
+		return clusterList;
+	}
+
+	/**
+	 * Finish adding documents, releasing the index and the signatures of the representatives, which
+	 * are only needed to detect near-duplicates. Only the groups of near-duplicates needed by expand
+	 * are retained, and no more documents may be added until collapse or expand starts afresh.
+	 */
+	public void finish() {
+		for (Document representative : representatives) {
+			representative.setSignature(null);
+		}
+		representatives.clear();
+		index = null;
+	}
+
+	/**
+	 * Find the representative in the index most similar to the provided document, or null if no
+	 * representative reaches the similarity threshold.
+	 */
+	private Document findRepresentative(Document document) {
+		Document representative = null;
+		double highestSimilarity = similarityThreshold;
+		for (Document candidate : index.findCandidates(document.getSignature())) {
+			double similarity = MinHashEncoder.calcSimilarity(document.getSignature(),
+			    candidate.getSignature());
+			if (similarity >= highestSimilarity) {
+				highestSimilarity = similarity;
+				representative = candidate;
+			}
+		}
+		return representative;
+	}
+}
@@ -0,0 +1,127 @@
+package com.cendrillon.clustering;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * A Clusterer implementation based on k-means clustering for corpora which do not fit in memory.
+ * The feature vectors of the documents are read from a VectorFile rather than from the documents
+ * themselves, and every pass over the documents streams through the file in chunks whose size is
+ * set by a fixed heap budget. Only the cluster centroids, one cluster index per document and the
+ * current chunk are resident. The clustering follows the same steps as KMeansClusterer.
+ */
+public class OutOfCoreKMeansClusterer extends VectorKMeansClusterer {
+	private int[] assignments;
+	private final Vector[] rows;
+	private boolean[] seeds;
+	private final VectorFile vectorFile;
+
+	/**
+	 * Construct a Clusterer.
+	 *
+	 * @param distance the distance metric to use for clustering
+	 * @param clusteringThreshold the threshold used to determine the number of clusters k
+	 * @param clusteringIterations the number of iterations to use in k-means clustering
+	 * @param vectorFile the file holding the feature vector of each document, in DocumentList order
+	 * @param chunkBudget the number of bytes of heap to use for the chunk of feature vectors being
+	 *          processed
+	 */
+	public OutOfCoreKMeansClusterer(DistanceMetric distance, double clusteringThreshold,
+	    int clusteringIterations, VectorFile vectorFile, long chunkBudget) {
+		super(distance, clusteringThreshold, clusteringIterations, vectorFile.getNumFeatures());
+		this.vectorFile = vectorFile;
+		long rowSize = (long) vectorFile.getNumFeatures() * 8;
+		int chunkSize = (int) Math.max(1, Math.min(vectorFile.size(), chunkBudget / rowSize));
+		rows = new Vector[chunkSize];
+		for (int i = 0; i < chunkSize; i++) {
+			rows[i] = new Vector(vectorFile.getNumFeatures());
+		}
+	}
+
+	@Override
+	void assignDocuments(DocumentList documentList, Vector[] centroids, Vector[] sums,
+	    double[] weights) throws IOException {
+		for (int start = 0; start < vectorFile.size(); start += rows.length) {
+			int count = vectorFile.read(start, rows);
+			for (int i = 0; i < count; i++) {
+				int nearestCluster = distance.findNearestCentroid(rows[i], centroids);
+				double weight = documentList.get(start + i).getWeight();
+				Vector sum = sums[nearestCluster];
+				for (int j = 0; j < sum.size(); j++) {
+					sum.set(j, sum.get(j) + weight * rows[i].get(j));
+				}
+				weights[nearestCluster] += weight;
+				assignments[start + i] = nearestCluster;
+			}
+		}
+	}
+
+	@Override
+	double calcIntraClusterDistance(DocumentList documentList, Vector[] centroids)
+	    throws IOException {
+		double sumIntraClusterDistance = 0;
+		double numDocuments = 0;
+		for (int start = 0; start < vectorFile.size(); start += rows.length) {
+			int count = vectorFile.read(start, rows);
+			for (int i = 0; i < count; i++) {
+				double weight = documentList.get(start + i).getWeight();
+				sumIntraClusterDistance += weight
+				    * distance.calcDistance(rows[i], centroids[assignments[start + i]]);
+				numDocuments += weight;
+			}
+		}
+		return sumIntraClusterDistance / numDocuments;
+	}
+
+	@Override
+	void clearSeeds() {
+		seeds = new boolean[vectorFile.size()];
+	}
+
+	/**
+	 * Run k-means clustering on the provided documentList, whose feature vectors are stored in the
+	 * VectorFile. Number of clusters k is set to the lowest value that ensures the intracluster to
+	 * intercluster distance ratio is below clusteringThreshold.
+	 */
+	@Override
+	public ClusterList cluster(DocumentList documentList) {
+		if (documentList.size() != vectorFile.size()) {
+			throw new IllegalArgumentException("DocumentList does not match VectorFile");
+		}
+		try {
+			assignments = new int[documentList.size()];
+			Vector[] centroids = clusterVectors(documentList);
+			return createClusterList(documentList, centroids, assignments);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	Vector findFurthestDocument(DocumentList documentList, Vector[] centroids) throws IOException {
+		double furthestDistance = Double.MIN_VALUE;
+		int furthestDocument = -1;
+		for (int start = 0; start < vectorFile.size(); start += rows.length) {
+			int count = vectorFile.read(start, rows);
+			for (int i = 0; i < count; i++) {
+				if (seeds[start + i]) {
+					continue;
+				}
+				double documentDistance = distance.calcDistance(rows[i], centroids);
+				if (documentDistance > furthestDistance) {
+					furthestDistance = documentDistance;
+					furthestDocument = start + i;
+				}
+			}
+		}
+		return furthestDocument < 0 ? null : readSeed(furthestDocument);
+	}
+
+	@Override
+	Vector readSeed(int index) throws IOException {
+		Vector[] vector = { new Vector(vectorFile.getNumFeatures()) };
+		vectorFile.read(index, vector);
+		seeds[index] = true;
+		return vector[0];
+	}
+}
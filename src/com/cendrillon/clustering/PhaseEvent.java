@@ -0,0 +1,21 @@
+package com.cendrillon.clustering;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Flight Recorder event covering one execution of a phase of the clustering pipeline. */
+@Name("com.cendrillon.clustering.Phase")
+@Label("Clustering Phase")
+@Category("Clustering")
+@Description("Execution of a phase of the clustering pipeline")
+class PhaseEvent extends jdk.jfr.Event {
+	@Label("Phase")
+	String phase;
+
+	@Label("Allocated")
+	@DataAmount
+	long allocatedBytes;
+}
@@ -0,0 +1,270 @@
+package com.cendrillon.clustering;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Worker process for ShardedKMeansClusterer. A worker holds one shard of the documents being
+ * clustered. It contributes its document frequencies to the global inverse document frequency,
+ * encodes its documents, and runs the assignment step of k-means locally, returning partial
+ * centroid sums to the coordinator. Workers are started by the coordinator and connect back to it
+ * over a localhost socket, after which they execute commands until told to shut down.
+ */
+public class ShardWorker {
+	static final int SHARD = 1;
+	static final int ENCODE = 2;
+	static final int VECTOR = 3;
+	static final int FURTHEST = 4;
+	static final int ASSIGN = 5;
+	static final int DISTANCE = 6;
+	static final int ASSIGNMENTS = 7;
+	static final int SHUTDOWN = 8;
+	private final DataInputStream in;
+	private final DataOutputStream out;
+	private int[] assignments;
+	private DistanceMetric distance;
+	private DocumentList documentList;
+	private TfIdfEncoder encoder;
+	private long numReportedEvaluations;
+
+	/** Construct a worker which executes commands received over the provided socket. */
+	private ShardWorker(Socket socket) throws IOException {
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+	}
+
+	/**
+	 * Assign each document in the shard to the nearest centroid, and reply with the total weight and
+	 * weighted sum of the feature vectors assigned to each cluster, followed by the distance
+	 * evaluations made.
+	 */
+	private void assign() throws IOException {
+		Vector[] centroids = readVectors(in);
+		double[] weights = new double[centroids.length];
+		Vector[] sums = new Vector[centroids.length];
+		for (int i = 0; i < sums.length; i++) {
+			sums[i] = new Vector(documentList.getNumFeatures());
+		}
+		for (int i = 0; i < documentList.size(); i++) {
+			Document document = documentList.get(i);
+			int nearestCluster = distance.findNearestCentroid(document.getVector(), centroids);
+			Vector sum = sums[nearestCluster];
+			for (int j = 0; j < sum.size(); j++) {
+				sum.set(j, sum.get(j) + document.getWeight() * document.getVector().get(j));
+			}
+			weights[nearestCluster] += document.getWeight();
+			assignments[i] = nearestCluster;
+		}
+		for (int i = 0; i < centroids.length; i++) {
+			out.writeDouble(weights[i]);
+			writeVector(out, sums[i]);
+		}
+		writeNumEvaluations();
+	}
+
+	/**
+	 * Reply with the weighted sum of distances between each document and the centroid of the cluster
+	 * it was last assigned to, followed by the total weight of the documents and the distance
+	 * evaluations made.
+	 */
+	private void calcIntraClusterDistance() throws IOException {
+		Vector[] centroids = readVectors(in);
+		double sumIntraClusterDistance = 0;
+		double numDocuments = 0;
+		for (int i = 0; i < documentList.size(); i++) {
+			Document document = documentList.get(i);
+			sumIntraClusterDistance += document.getWeight()
+			    * distance.calcDistance(document.getVector(), centroids[assignments[i]]);
+			numDocuments += document.getWeight();
+		}
+		out.writeDouble(sumIntraClusterDistance);
+		out.writeDouble(numDocuments);
+		writeNumEvaluations();
+	}
+
+	/**
+	 * Encode the documents in the shard using the global inverse document frequency, and receive the
+	 * weight of each document.
+	 */
+	private void encode() throws IOException {
+		encoder.encode(documentList, readVector(in));
+		for (Document document : documentList) {
+			document.releaseContents();
+			document.setWeight(in.readInt());
+		}
+		out.writeInt(documentList.size());
+	}
+
+	/**
+	 * Find the document in the shard with maximum distance to the provided centroids, excluding the
+	 * provided seed documents. Reply with its index and distance, followed by its feature vector if a
+	 * document was found, and the distance evaluations made.
+	 */
+	private void findFurthestDocument() throws IOException {
+		Vector[] centroids = readVectors(in);
+		boolean[] seeds = new boolean[documentList.size()];
+		int numSeeds = in.readInt();
+		for (int i = 0; i < numSeeds; i++) {
+			seeds[in.readInt()] = true;
+		}
+		double furthestDistance = Double.MIN_VALUE;
+		int furthestDocument = -1;
+		for (int i = 0; i < documentList.size(); i++) {
+			if (seeds[i]) {
+				continue;
+			}
+			double documentDistance = distance.calcDistance(documentList.get(i).getVector(), centroids);
+			if (documentDistance > furthestDistance) {
+				furthestDistance = documentDistance;
+				furthestDocument = i;
+			}
+		}
+		out.writeInt(furthestDocument);
+		out.writeDouble(furthestDistance);
+		if (furthestDocument >= 0) {
+			writeVector(out, documentList.get(furthestDocument).getVector());
+		}
+		writeNumEvaluations();
+	}
+
+	/**
+	 * Run a worker which connects to the coordinator listening on the provided localhost port.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Usage: ShardWorker <port>\n");
+			System.exit(1);
+		}
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]));
+		try {
+			new ShardWorker(socket).run();
+		} finally {
+			socket.close();
+		}
+	}
+
+	/** Read a string written by writeString. */
+	static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/** Read a Vector written by writeVector. */
+	static Vector readVector(DataInputStream in) throws IOException {
+		Vector vector = new Vector(in.readInt());
+		for (int i = 0; i < vector.size(); i++) {
+			vector.set(i, in.readDouble());
+		}
+		return vector;
+	}
+
+	/** Read an array of Vectors written by writeVectors. */
+	static Vector[] readVectors(DataInputStream in) throws IOException {
+		Vector[] vectors = new Vector[in.readInt()];
+		for (int i = 0; i < vectors.length; i++) {
+			vectors[i] = readVector(in);
+		}
+		return vectors;
+	}
+
+	/**
+	 * Receive the distance metric and number of features followed by the documents of the shard,
+	 * each preceded by true and terminated by false, and reply with the document frequencies of the
+	 * shard.
+	 */
+	private void receiveShard() throws IOException {
+		String distanceClass = readString(in);
+		try {
+			distance = (DistanceMetric) Class.forName(distanceClass).getDeclaredConstructor()
+			    .newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IOException("Unable to create distance metric " + distanceClass, e);
+		}
+		int numFeatures = in.readInt();
+		documentList = new DocumentList();
+		while (in.readBoolean()) {
+			long id = in.readLong();
+			String title = readString(in);
+			documentList.add(new Document(id, readString(in), title));
+		}
+		assignments = new int[documentList.size()];
+		encoder = new TfIdfEncoder(numFeatures);
+		writeVector(out, encoder.calcDocumentFrequency(documentList));
+	}
+
+	/** Execute commands from the coordinator until told to shut down. */
+	private void run() throws IOException {
+		while (true) {
+			int command = in.readInt();
+			switch (command) {
+			case SHARD:
+				receiveShard();
+				break;
+			case ENCODE:
+				encode();
+				break;
+			case VECTOR:
+				writeVector(out, documentList.get(in.readInt()).getVector());
+				break;
+			case FURTHEST:
+				findFurthestDocument();
+				break;
+			case ASSIGN:
+				assign();
+				break;
+			case DISTANCE:
+				calcIntraClusterDistance();
+				break;
+			case ASSIGNMENTS:
+				for (int assignment : assignments) {
+					out.writeInt(assignment);
+				}
+				break;
+			case SHUTDOWN:
+				return;
+			default:
+				throw new IOException("Unknown command " + command);
+			}
+			out.flush();
+		}
+	}
+
+	/**
+	 * Write the number of distance evaluations made since they were last written, so that the
+	 * coordinator can include them in its count.
+	 */
+	private void writeNumEvaluations() throws IOException {
+		out.writeLong(distance.getNumEvaluations() - numReportedEvaluations);
+		numReportedEvaluations = distance.getNumEvaluations();
+	}
+
+	/** Write a string as its length followed by its UTF-8 encoding. */
+	static void writeString(DataOutputStream out, String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/** Write a Vector as its size followed by its elements. */
+	static void writeVector(DataOutputStream out, Vector vector) throws IOException {
+		out.writeInt(vector.size());
+		for (int i = 0; i < vector.size(); i++) {
+			out.writeDouble(vector.get(i));
+		}
+	}
+
+	/** Write an array of Vectors as its length followed by each Vector. */
+	static void writeVectors(DataOutputStream out, Vector[] vectors) throws IOException {
+		out.writeInt(vectors.length);
+		for (Vector vector : vectors) {
+			writeVector(out, vector);
+		}
+	}
+}
@@ -0,0 +1,336 @@
+package com.cendrillon.clustering;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A Clusterer implementation based on k-means clustering which spreads the corpus across local
+ * worker processes. The documents are partitioned into shards, one per ShardWorker, and each worker
+ * encodes its shard and runs the assignment step of k-means locally. This class acts as the
+ * coordinator: it reduces the document frequencies of the shards into a global inverse document
+ * frequency, reduces the partial centroid sums returned by the workers into new centroids which it
+ * broadcasts for the next iteration, and reduces the partial intracluster distances used to choose
+ * the number of clusters k. The clustering follows the same steps as KMeansClusterer. The provided
+ * documents must not have been encoded, since encoding is done by the workers.
+ */
+public class ShardedKMeansClusterer extends VectorKMeansClusterer {
+	private static final int ACCEPT_TIMEOUT = 60000;
+	private final int numShards;
+	private Shard[] shards;
+
+	/**
+	 * Construct a Clusterer.
+	 *
+	 * @param distance the distance metric to use for clustering. Must compare feature vectors and
+	 *          have a public no argument constructor, so that workers can create it.
+	 * @param clusteringThreshold the threshold used to determine the number of clusters k
+	 * @param clusteringIterations the number of iterations to use in k-means clustering
+	 * @param numFeatures the number of features used to encode each document
+	 * @param numShards the number of worker processes
+	 */
+	public ShardedKMeansClusterer(DistanceMetric distance, double clusteringThreshold,
+	    int clusteringIterations, int numFeatures, int numShards) {
+		super(distance, clusteringThreshold, clusteringIterations, numFeatures);
+		if (distance instanceof MinHashJaccardDistance) {
+			throw new IllegalArgumentException("Sharded clustering requires feature vectors");
+		}
+		this.numShards = numShards;
+	}
+
+	/**
+	 * Have each shard assign its documents to the nearest centroid, and reduce the partial sums of
+	 * the shards.
+	 */
+	@Override
+	void assignDocuments(DocumentList documentList, Vector[] centroids, Vector[] sums,
+	    double[] weights) throws IOException {
+		broadcast(ShardWorker.ASSIGN, centroids);
+		for (Shard shard : shards) {
+			for (int i = 0; i < centroids.length; i++) {
+				weights[i] += shard.in.readDouble();
+				sums[i] = sums[i].add(ShardWorker.readVector(shard.in));
+			}
+			distance.addEvaluations(shard.in.readLong());
+		}
+	}
+
+	/** Send a command together with the provided centroids to every shard. */
+	private void broadcast(int command, Vector[] centroids) throws IOException {
+		for (Shard shard : shards) {
+			shard.out.writeInt(command);
+			ShardWorker.writeVectors(shard.out, centroids);
+			shard.out.flush();
+		}
+	}
+
+	/** Reduce the partial intracluster distances of the shards. */
+	@Override
+	double calcIntraClusterDistance(DocumentList documentList, Vector[] centroids)
+	    throws IOException {
+		broadcast(ShardWorker.DISTANCE, centroids);
+		double sumIntraClusterDistance = 0;
+		double numDocuments = 0;
+		for (Shard shard : shards) {
+			sumIntraClusterDistance += shard.in.readDouble();
+			numDocuments += shard.in.readDouble();
+			distance.addEvaluations(shard.in.readLong());
+		}
+		return sumIntraClusterDistance / numDocuments;
+	}
+
+	@Override
+	void clearSeeds() {
+		for (Shard shard : shards) {
+			shard.seeds.clear();
+		}
+	}
+
+	/**
+	 * Run k-means clustering on the provided documentList. Number of clusters k is set to the lowest
+	 * value that ensures the intracluster to intercluster distance ratio is below
+	 * clusteringThreshold.
+	 */
+	@Override
+	public ClusterList cluster(DocumentList documentList) {
+		return cluster(documentList.iterator(), null);
+	}
+
+	/**
+	 * Run k-means clustering on the documents read by the provided DocumentReader, collapsing
+	 * near-duplicates if a collapser is provided. Documents are sent to the shards as they are read,
+	 * so only the ID, title and weight of each document are held by the coordinator.
+	 */
+	public ClusterList cluster(DocumentReader reader, NearDuplicateCollapser collapser) {
+		return cluster(reader.iterator(), collapser);
+	}
+
+	/** Start the workers, distribute the documents and run k-means clustering over the shards. */
+	private ClusterList cluster(Iterator<Document> documents, NearDuplicateCollapser collapser) {
+		List<Process> workers = new ArrayList<Process>();
+		shards = new Shard[numShards];
+		try {
+			ServerSocket serverSocket = new ServerSocket(0, numShards, InetAddress.getLoopbackAddress());
+			try {
+				serverSocket.setSoTimeout(ACCEPT_TIMEOUT);
+				for (int i = 0; i < numShards; i++) {
+					workers.add(startWorker(serverSocket.getLocalPort()));
+				}
+				for (int i = 0; i < numShards; i++) {
+					shards[i] = new Shard(serverSocket.accept());
+				}
+			} finally {
+				serverSocket.close();
+			}
+			DocumentList documentList = distribute(documents, collapser);
+			encode(documentList);
+			ClusterList clusterList = createClusterList(documentList, clusterVectors(documentList));
+			for (Shard shard : shards) {
+				shard.out.writeInt(ShardWorker.SHUTDOWN);
+				shard.out.flush();
+			}
+			for (Process worker : workers) {
+				worker.waitFor();
+			}
+			return clusterList;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} finally {
+			for (Shard shard : shards) {
+				if (shard != null) {
+					shard.close();
+				}
+			}
+			shards = null;
+			for (Process worker : workers) {
+				worker.destroy();
+			}
+		}
+	}
+
+	/**
+	 * Create a ClusterList from the final centroids and the cluster assigned to each document by the
+	 * shards.
+	 */
+	private ClusterList createClusterList(DocumentList documentList, Vector[] centroids)
+	    throws IOException {
+		if (centroids == null) {
+			return new ClusterList();
+		}
+		for (Shard shard : shards) {
+			shard.out.writeInt(ShardWorker.ASSIGNMENTS);
+			shard.out.flush();
+		}
+		// documents are dealt to the shards in turn, so document i is document i / numShards of shard
+		// i % numShards
+		int[] assignments = new int[documentList.size()];
+		for (int i = 0; i < shards.length; i++) {
+			for (int j = 0; j < shards[i].documents.size(); j++) {
+				assignments[j * numShards + i] = shards[i].in.readInt();
+			}
+		}
+		return createClusterList(documentList, centroids, assignments);
+	}
+
+	/**
+	 * Deal the provided documents to the shards in turn as they are read, releasing the contents of
+	 * each document once it has been sent. If a collapser is provided, near-duplicates are collapsed
+	 * into their representative instead of being sent. Returns the documents sent to the shards.
+	 */
+	private DocumentList distribute(Iterator<Document> documents, NearDuplicateCollapser collapser)
+	    throws IOException {
+		for (Shard shard : shards) {
+			shard.out.writeInt(ShardWorker.SHARD);
+			ShardWorker.writeString(shard.out, distance.getClass().getName());
+			shard.out.writeInt(numFeatures);
+		}
+		DocumentList documentList = new DocumentList();
+		while (documents.hasNext()) {
+			Document document = documents.next();
+			if (collapser != null && !collapser.add(document)) {
+				document.releaseContents();
+				continue;
+			}
+			Shard shard = shards[documentList.size() % numShards];
+			shard.out.writeBoolean(true);
+			shard.out.writeLong(document.getId());
+			ShardWorker.writeString(shard.out, document.getTitle());
+			ShardWorker.writeString(shard.out, document.getContents());
+			document.releaseContents();
+			shard.documents.add(document);
+			documentList.add(document);
+		}
+		if (collapser != null) {
+			collapser.finish();
+		}
+		for (Shard shard : shards) {
+			shard.out.writeBoolean(false);
+			shard.out.flush();
+		}
+		return documentList;
+	}
+
+	/**
+	 * Reduce the document frequencies of the shards into the global inverse document frequency, and
+	 * have the shards encode their documents with it. The weights of the documents are sent with it,
+	 * since collapsing near-duplicates may increase the weight of a document after it was sent.
+	 */
+	private void encode(DocumentList documentList) throws IOException {
+		Vector documentFrequency = new Vector(numFeatures);
+		for (Shard shard : shards) {
+			documentFrequency = documentFrequency.add(ShardWorker.readVector(shard.in));
+		}
+		Metrics.Timer timer = Metrics.start(Metrics.Phase.IDF);
+		Vector inverseDocumentFrequency = TfIdfEncoder.calcInverseDocumentFrequency(
+		    documentFrequency, documentList.size());
+		timer.stop();
+		for (Shard shard : shards) {
+			shard.out.writeInt(ShardWorker.ENCODE);
+			ShardWorker.writeVector(shard.out, inverseDocumentFrequency);
+			for (Document document : shard.documents) {
+				shard.out.writeInt(document.getWeight());
+			}
+			shard.out.flush();
+		}
+		for (Shard shard : shards) {
+			shard.in.readInt();
+		}
+	}
+
+	/**
+	 * Find the document with maximum distance to the provided centroids over all shards, from the
+	 * furthest document reported by each shard. Ties are broken in favour of the document that comes
+	 * first in the DocumentList, so the choice does not depend on the number of shards.
+	 */
+	@Override
+	Vector findFurthestDocument(DocumentList documentList, Vector[] centroids) throws IOException {
+		for (Shard shard : shards) {
+			shard.out.writeInt(ShardWorker.FURTHEST);
+			ShardWorker.writeVectors(shard.out, centroids);
+			shard.out.writeInt(shard.seeds.size());
+			for (int seed : shard.seeds) {
+				shard.out.writeInt(seed);
+			}
+			shard.out.flush();
+		}
+		double furthestDistance = Double.MIN_VALUE;
+		Vector furthestVector = null;
+		int furthestIndex = -1;
+		for (int i = 0; i < shards.length; i++) {
+			int document = shards[i].in.readInt();
+			double documentDistance = shards[i].in.readDouble();
+			if (document >= 0) {
+				Vector vector = ShardWorker.readVector(shards[i].in);
+				int index = document * numShards + i;
+				if (documentDistance > furthestDistance
+				    || (documentDistance == furthestDistance && index < furthestIndex)) {
+					furthestDistance = documentDistance;
+					furthestVector = vector;
+					furthestIndex = index;
+				}
+			}
+			distance.addEvaluations(shards[i].in.readLong());
+		}
+		if (furthestIndex >= 0) {
+			shards[furthestIndex % numShards].seeds.add(furthestIndex / numShards);
+		}
+		return furthestVector;
+	}
+
+	/** Request the feature vector of a document from its shard and record the document as a seed. */
+	@Override
+	Vector readSeed(int index) throws IOException {
+		Shard shard = shards[index % numShards];
+		int document = index / numShards;
+		shard.out.writeInt(ShardWorker.VECTOR);
+		shard.out.writeInt(document);
+		shard.out.flush();
+		shard.seeds.add(document);
+		return ShardWorker.readVector(shard.in);
+	}
+
+	/** Start a worker process which connects back to the provided localhost port. */
+	private static Process startWorker(int port) throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator
+		    + "java";
+		ProcessBuilder processBuilder = new ProcessBuilder(java, "-cp",
+		    System.getProperty("java.class.path"), ShardWorker.class.getName(), String.valueOf(port));
+		return processBuilder.inheritIO().start();
+	}
+
+	/** Connection to a worker together with the documents in its shard. */
+	private static final class Shard {
+		private final DocumentList documents = new DocumentList();
+		private final DataInputStream in;
+		private final DataOutputStream out;
+		private final List<Integer> seeds = new ArrayList<Integer>();
+		private final Socket socket;
+
+		Shard(Socket socket) throws IOException {
+			this.socket = socket;
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		}
+
+		void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// the worker is shut down or destroyed regardless
+			}
+		}
+	}
+}
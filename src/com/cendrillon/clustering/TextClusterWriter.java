@@ -0,0 +1,28 @@
+package com.cendrillon.clustering;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * ClusterWriter which writes a human readable listing of the documents in each cluster. The output
+ * ends with a blank line, as when the ClusterList was printed with println.
+ */
+public class TextClusterWriter extends ClusterWriter {
+	/** Construct a TextClusterWriter which writes to the provided channel. */
+	public TextClusterWriter(WritableByteChannel channel) {
+		super(channel);
+	}
+
+	@Override
+	protected void writeCluster(int clusterIndex, Cluster cluster, int[] order) throws IOException {
+		writeString("Cluster " + clusterIndex + "\n");
+		for (int i : order) {
+			writeString("  " + cluster.getDocuments().get(i) + "\n");
+		}
+	}
+
+	@Override
+	protected void writeFooter() throws IOException {
+		writeString("\n");
+	}
+}
@@ -1,10 +1,15 @@
 package com.cendrillon.clustering;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+
 /**
  * Implementation of Encoder which uses Term Frequency - Inverse Document Frequency (TF-IDF)
  * encoding.
  */
 public class TfIdfEncoder implements Encoder {
+	private final HistogramCache histogramCache;
 	private final int numFeatures;
 	private Vector inverseDocumentFrequency;
 
@@ -13,7 +18,21 @@ public class TfIdfEncoder implements Encoder {
 	 * into Vectors with the specified number of features.
 	 */
 	public TfIdfEncoder(int numFeatures) {
+		this(numFeatures, null);
+	}
+
+	/**
+	 * Construct a term frequency - inverse document frequency encoder which looks up word histograms
+	 * in the provided cache before tokenizing documents. Only new or changed documents are tokenized,
+	 * while the inverse document frequency is always recalculated from the histograms of the current
+	 * documents.
+	 */
+	public TfIdfEncoder(int numFeatures, HistogramCache histogramCache) {
 		this.numFeatures = numFeatures;
+		this.histogramCache = histogramCache;
+		if (histogramCache != null) {
+			Metrics.register(histogramCache);
+		}
 	}
 
 	/**
@@ -22,12 +41,22 @@ public class TfIdfEncoder implements Encoder {
 	 * numFeatures - 1.
 	 */
 	private void calcHistogram(Document document) {
+		if (histogramCache != null) {
+			Vector histogram = histogramCache.get(document);
+			if (histogram != null) {
+				document.setHistogram(histogram);
+				return;
+			}
+		}
 		String[] words = document.getContents().split("[^\\w]+");
 		Vector histogram = new Vector(numFeatures);
 		for (int i = 0; i < words.length; i++) {
 			histogram.increment(hashWord(words[i]));
 		}
 		document.setHistogram(histogram);
+		if (histogramCache != null) {
+			histogramCache.put(document, histogram);
+		}
 	}
 
 	/** Calculate word histograms for all documents in a DocumentList. */
@@ -39,21 +68,42 @@ public class TfIdfEncoder implements Encoder {
 	}
 
 	/**
-	 * Calculate inverse document frequency for the provided DocumentList. The inverse document
-	 * frequency for a word i is defined as log(N/Ni) where N is the total number documents and Ni is
-	 * the number of documents where word i occurs. This method requires that the document histogram
-	 * for each document has already been calculated.
+	 * Add the words occurring in the provided document to the document frequency count. This method
+	 * requires that the document histogram has already been calculated.
+	 */
+	private void addDocumentFrequency(Vector documentFrequency, Document document) {
+		for (int i = 0; i < numFeatures; i++) {
+			if (document.getHistogram().get(i) > 0) {
+				documentFrequency.increment(i);
+			}
+		}
+	}
+
+	/**
+	 * Calculate word histograms for all documents in the provided DocumentList, and count the number
+	 * of documents in which each word occurs. Document frequencies of separate DocumentLists can be
+	 * summed to obtain the document frequency of the combined corpus.
 	 */
-	private void calcInverseDocumentFrequency(DocumentList documentList) {
+	public Vector calcDocumentFrequency(DocumentList documentList) {
+		Metrics.Timer timer = Metrics.start(Metrics.Phase.TOKENIZE);
+		calcHistogram(documentList);
+		timer.stop();
+		timer = Metrics.start(Metrics.Phase.IDF);
 		Vector documentFrequency = new Vector(numFeatures);
 		for (Document document : documentList) {
-			for (int i = 0; i < numFeatures; i++) {
-				if (document.getHistogram().get(i) > 0) {
-					documentFrequency.increment(i);
-				}
-			}
+			addDocumentFrequency(documentFrequency, document);
 		}
-		inverseDocumentFrequency = documentFrequency.invert().multiply(documentList.size()).log();
+		timer.stop();
+		return documentFrequency;
+	}
+
+	/**
+	 * Calculate inverse document frequency from document frequencies. The inverse document frequency
+	 * for a word i is defined as log(N/Ni) where N is the total number documents and Ni is the number
+	 * of documents where word i occurs.
+	 */
+	public static Vector calcInverseDocumentFrequency(Vector documentFrequency, int numDocuments) {
+		return documentFrequency.invert().multiply(numDocuments).log();
 	}
 
 	/**
@@ -70,18 +120,107 @@ public class TfIdfEncoder implements Encoder {
 	/** Encode all documents within the provided DocumentList. */
 	@Override
 	public void encode(DocumentList documentList) {
-		calcHistogram(documentList);
-		calcInverseDocumentFrequency(documentList);
+		Vector documentFrequency = calcDocumentFrequency(documentList);
+		encode(documentList, calcInverseDocumentFrequency(documentFrequency, documentList.size()));
+	}
+
+	/**
+	 * Encode all documents within the provided DocumentList using the provided inverse document
+	 * frequency, which may have been calculated over a larger corpus. This method requires that the
+	 * document histograms have already been calculated by calcDocumentFrequency.
+	 */
+	public void encode(DocumentList documentList, Vector inverseDocumentFrequency) {
+		this.inverseDocumentFrequency = inverseDocumentFrequency;
+		Metrics.Timer timer = Metrics.start(Metrics.Phase.ENCODE);
 		for (Document document : documentList) {
 			encode(document);
 		}
+		timer.stop();
 		documentList.setNumFeatures(numFeatures);
 	}
 
+	/**
+	 * Encode the documents read from the provided file, appending their feature vectors to the
+	 * provided VectorFile in order. The file is read twice, first for the document frequencies and
+	 * then for encoding, and each document is tokenized as it is read, so that no more than one
+	 * document's contents and histogram are held at a time. Returns the documents, which retain only
+	 * their ID, title and weight. If a NearDuplicateCollapser is provided, near-duplicates are
+	 * collapsed as they are read and only the representatives are encoded and returned.
+	 */
+	public DocumentList encode(File input, VectorFile vectorFile, NearDuplicateCollapser collapser)
+	    throws IOException {
+		DocumentList documentList = new DocumentList();
+		BitSet encoded = new BitSet();
+		Vector documentFrequency = new Vector(numFeatures);
+		DocumentReader reader = new DocumentReader(input);
+		try {
+			Document document;
+			for (int i = 0; (document = read(reader)) != null; i++) {
+				Metrics.Timer timer = Metrics.start(Metrics.Phase.TOKENIZE);
+				if (collapser == null || collapser.add(document)) {
+					calcHistogram(document);
+					addDocumentFrequency(documentFrequency, document);
+					documentList.add(document);
+					encoded.set(i);
+				}
+				document.releaseContents();
+				timer.stop();
+			}
+		} finally {
+			reader.close();
+		}
+		if (collapser != null) {
+			collapser.finish();
+		}
+		Metrics.Timer timer = Metrics.start(Metrics.Phase.IDF);
+		inverseDocumentFrequency = calcInverseDocumentFrequency(documentFrequency, documentList.size());
+		timer.stop();
+		reader = new DocumentReader(input);
+		try {
+			Document document;
+			int numEncoded = 0;
+			for (int i = 0; (document = read(reader)) != null; i++) {
+				if (!encoded.get(i)) {
+					continue;
+				}
+				if (numEncoded == documentList.size()
+				    || document.getId() != documentList.get(numEncoded).getId()) {
+					throw new IOException(input + " changed while it was being encoded");
+				}
+				timer = Metrics.start(Metrics.Phase.ENCODE);
+				calcHistogram(document);
+				encode(document);
+				vectorFile.append(document.getVector());
+				timer.stop();
+				numEncoded++;
+			}
+			if (numEncoded != documentList.size()) {
+				throw new IOException(input + " changed while it was being encoded");
+			}
+		} finally {
+			reader.close();
+		}
+		documentList.setNumFeatures(numFeatures);
+		return documentList;
+	}
+
 	/**
 	 * Hash word into integer between 0 and numFeatures - 1. Used to form document feature vector.
 	 */
 	private int hashWord(String word) {
 		return Math.abs(word.hashCode()) % numFeatures;
 	}
+
+	/**
+	 * Read the next document from the provided DocumentReader, timing the read as the PARSE phase so
+	 * that streamed encoding reports parsing separately from tokenizing and encoding.
+	 */
+	private static Document read(DocumentReader reader) throws IOException {
+		Metrics.Timer timer = Metrics.start(Metrics.Phase.PARSE);
+		try {
+			return reader.read();
+		} finally {
+			timer.stop();
+		}
+	}
 }
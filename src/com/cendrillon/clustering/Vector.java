@@ -1,5 +1,6 @@
 package com.cendrillon.clustering;
 
+import java.nio.DoubleBuffer;
 import java.util.Arrays;
 
 /**
@@ -105,6 +106,11 @@ public class Vector {
 		return result;
 	}
 
+	/** Read the elements of this Vector from the provided buffer. */
+	void read(DoubleBuffer buffer) {
+		buffer.get(elements);
+	}
+
 	/** Calculate the L2 norm of this. */
 	public double norm() {
 		double normSquared = 0.0;
@@ -128,4 +134,9 @@ public class Vector {
 	public String toString() {
 		return Arrays.toString(elements);
 	}
+
+	/** Write the elements of this Vector to the provided buffer. */
+	void write(DoubleBuffer buffer) {
+		buffer.put(elements);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,113 @@
+package com.cendrillon.clustering;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A binary file of fixed size Vectors, used to spill encoded documents out of the heap. Vectors are
+ * appended sequentially and then read back in chunks through memory mapped segments of the file, so
+ * only the chunk being processed needs to be resident. The file is mapped once after the last
+ * append, in segments holding a whole number of Vectors, and the mappings are reused by every read.
+ */
+public class VectorFile implements Closeable {
+	private static final long SEGMENT_SIZE = 1L << 30;
+	private static final int WRITE_BUFFER_SIZE = 1 << 20;
+	private final FileChannel channel;
+	private final RandomAccessFile file;
+	private final int numFeatures;
+	private final long rowSize;
+	private final int rowsPerSegment;
+	private MappedByteBuffer[] segments;
+	private final ByteBuffer writeBuffer;
+	private int numVectors;
+
+	/**
+	 * Create an empty VectorFile at the provided location, replacing any existing file. All Vectors
+	 * stored in the file must have numFeatures elements.
+	 */
+	public VectorFile(File location, int numFeatures) throws IOException {
+		this.numFeatures = numFeatures;
+		rowSize = (long) numFeatures * 8;
+		rowsPerSegment = (int) Math.max(1, SEGMENT_SIZE / rowSize);
+		file = new RandomAccessFile(location, "rw");
+		file.setLength(0);
+		channel = file.getChannel();
+		writeBuffer = ByteBuffer.allocateDirect((int) Math.max(rowSize, WRITE_BUFFER_SIZE)).order(
+		    ByteOrder.nativeOrder());
+	}
+
+	/** Append a Vector to the end of the file. */
+	public void append(Vector vector) throws IOException {
+		if (writeBuffer.remaining() < rowSize) {
+			flush();
+		}
+		vector.write(writeBuffer.asDoubleBuffer());
+		writeBuffer.position(writeBuffer.position() + (int) rowSize);
+		numVectors++;
+		segments = null;
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		file.close();
+	}
+
+	/** Write any buffered Vectors to the file. */
+	private void flush() throws IOException {
+		writeBuffer.flip();
+		while (writeBuffer.hasRemaining()) {
+			channel.write(writeBuffer);
+		}
+		writeBuffer.clear();
+	}
+
+	/** Map the file into segments of rowsPerSegment Vectors. */
+	private void map() throws IOException {
+		flush();
+		segments = new MappedByteBuffer[(numVectors + rowsPerSegment - 1) / rowsPerSegment];
+		for (int i = 0; i < segments.length; i++) {
+			int count = Math.min(rowsPerSegment, numVectors - i * rowsPerSegment);
+			segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, i * rowsPerSegment * rowSize, count
+			    * rowSize);
+			segments[i].order(ByteOrder.nativeOrder());
+		}
+	}
+
+	/** Get the number of elements in each Vector. */
+	public int getNumFeatures() {
+		return numFeatures;
+	}
+
+	/**
+	 * Read consecutive Vectors starting at index start into the provided rows, which must each have
+	 * numFeatures elements. Returns the number of Vectors read, which is less than rows.length when
+	 * the end of the file is reached.
+	 */
+	public int read(int start, Vector[] rows) throws IOException {
+		int count = Math.min(rows.length, numVectors - start);
+		if (count <= 0) {
+			return 0;
+		}
+		if (segments == null) {
+			map();
+		}
+		for (int i = 0; i < count; i++) {
+			MappedByteBuffer segment = segments[(start + i) / rowsPerSegment];
+			segment.position((int) ((start + i) % rowsPerSegment * rowSize));
+			rows[i].read(segment.asDoubleBuffer());
+		}
+		return count;
+	}
+
+	/** Return the number of Vectors in the file. */
+	public int size() {
+		return numVectors;
+	}
+}
@@ -0,0 +1,170 @@
+package com.cendrillon.clustering;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Base class for Clusterer implementations based on k-means clustering whose feature vectors are
+ * not held by the documents themselves. Subclasses decide where the feature vectors live and how a
+ * pass over them is made, while this class runs the search over the number of clusters k, the
+ * seeding and the centroid updates, following the same steps as KMeansClusterer. The centroids are
+ * held as Vectors and each pass returns partial sums from which the next centroids are computed.
+ */
+abstract class VectorKMeansClusterer implements Clusterer {
+	protected final double clusteringThreshold;
+	protected final int clusteringIterations;
+	protected final DistanceMetric distance;
+	protected final int numFeatures;
+	private long seed = new Random().nextLong();
+
+	/**
+	 * Construct a Clusterer.
+	 *
+	 * @param distance the distance metric to use for clustering
+	 * @param clusteringThreshold the threshold used to determine the number of clusters k
+	 * @param clusteringIterations the number of iterations to use in k-means clustering
+	 * @param numFeatures the number of features in each feature vector
+	 */
+	VectorKMeansClusterer(DistanceMetric distance, double clusteringThreshold,
+	    int clusteringIterations, int numFeatures) {
+		this.distance = distance;
+		this.clusteringThreshold = clusteringThreshold;
+		this.clusteringIterations = clusteringIterations;
+		this.numFeatures = numFeatures;
+	}
+
+	/**
+	 * Assign each document to the cluster whose centroid is nearest, remembering the assignment, and
+	 * accumulate the weighted sum of the feature vectors and the total weight assigned to each cluster.
+	 */
+	abstract void assignDocuments(DocumentList documentList, Vector[] centroids, Vector[] sums,
+	    double[] weights) throws IOException;
+
+	/**
+	 * Calculate average intracluster distance between each document and the centroid of the cluster
+	 * it was last assigned to. Documents are weighted by their weight.
+	 */
+	abstract double calcIntraClusterDistance(DocumentList documentList, Vector[] centroids)
+	    throws IOException;
+
+	/**
+	 * Calculate ratio of average intracluster distance to average intercluster distance, as in
+	 * ClusterList.calcIntraInterDistanceRatio.
+	 */
+	private double calcIntraInterDistanceRatio(DocumentList documentList, Vector[] centroids)
+	    throws IOException {
+		if (centroids.length < 2) {
+			return Double.MAX_VALUE;
+		}
+		double interClusterDistance = distance.calcInterClusterDistance(centroids);
+		if (interClusterDistance <= 0.0) {
+			return Double.MAX_VALUE;
+		}
+		return calcIntraClusterDistance(documentList, centroids) / interClusterDistance;
+	}
+
+	/** Forget the documents used as seeds for the previous number of clusters k. */
+	abstract void clearSeeds();
+
+	/**
+	 * Run k-means clustering on the provided documentList. Number of clusters k is set to the lowest
+	 * value that ensures the intracluster to intercluster distance ratio is below
+	 * clusteringThreshold. Returns the centroids of the clusters for the chosen k, or null if there
+	 * are no documents.
+	 */
+	Vector[] clusterVectors(DocumentList documentList) throws IOException {
+		Metrics.register(distance);
+		Vector[] centroids = null;
+		for (int k = 1; k <= documentList.size(); k++) {
+			long numEvaluations = distance.getNumEvaluations();
+			centroids = runKMeansClustering(documentList, k);
+			Metrics.Timer timer = Metrics.start(Metrics.Phase.QUALITY);
+			double ratio = calcIntraInterDistanceRatio(documentList, centroids);
+			timer.stop();
+			Metrics.recordClustering(k, clusteringIterations, ratio, distance.getNumEvaluations()
+			    - numEvaluations);
+			if (ratio < clusteringThreshold) {
+				break;
+			}
+		}
+		return centroids;
+	}
+
+	/**
+	 * Create a ClusterList from the final centroids, adding each document in the provided
+	 * DocumentList to the cluster given by assignments.
+	 */
+	static ClusterList createClusterList(DocumentList documentList, Vector[] centroids,
+	    int[] assignments) {
+		ClusterList clusterList = new ClusterList();
+		if (centroids == null) {
+			return clusterList;
+		}
+		Cluster[] clusters = new Cluster[centroids.length];
+		for (int i = 0; i < centroids.length; i++) {
+			clusters[i] = new Cluster(centroids[i]);
+			clusterList.add(clusters[i]);
+		}
+		for (int i = 0; i < documentList.size(); i++) {
+			clusters[assignments[i]].add(documentList.get(i));
+		}
+		return clusterList;
+	}
+
+	/**
+	 * Find the document with maximum distance to the provided centroids, excluding documents already
+	 * used as seeds. Returns the feature vector of the document and records it as a seed, or returns
+	 * null if every remaining document is at distance zero.
+	 */
+	abstract Vector findFurthestDocument(DocumentList documentList, Vector[] centroids)
+	    throws IOException;
+
+	/** Read the feature vector of the document at the provided index and record it as a seed. */
+	abstract Vector readSeed(int index) throws IOException;
+
+	/**
+	 * Run k means clustering for a fixed number of clusters k. Returns the centroids of the clusters,
+	 * while the cluster assigned to each document is retained by the subclass.
+	 */
+	private Vector[] runKMeansClustering(DocumentList documentList, int k) throws IOException {
+		Metrics.Timer timer = Metrics.start(Metrics.Phase.SEED);
+		clearSeeds();
+		// draw random numbers for each k from the seed, as in KMeansClusterer, so that runs with the
+		// same seed choose the same initial document
+		Random random = new Random(seed + k);
+		Vector[] centroids = new Vector[k];
+		centroids[0] = readSeed(random.nextInt(documentList.size()));
+		for (int i = 1; i < k; i++) {
+			centroids[i] = findFurthestDocument(documentList, Arrays.copyOf(centroids, i));
+			if (centroids[i] == null) {
+				// every remaining document coincides with an existing centroid, so use a zero centroid
+				centroids[i] = new Vector(numFeatures);
+			}
+		}
+		timer.stop();
+		for (int iter = 0; iter < clusteringIterations; iter++) {
+			timer = Metrics.start(Metrics.Phase.ASSIGN);
+			Vector[] sums = new Vector[k];
+			for (int i = 0; i < k; i++) {
+				sums[i] = new Vector(numFeatures);
+			}
+			double[] weights = new double[k];
+			assignDocuments(documentList, centroids, sums, weights);
+			timer.stop();
+			timer = Metrics.start(Metrics.Phase.UPDATE);
+			for (int i = 0; i < k; i++) {
+				if (weights[i] > 0) {
+					centroids[i] = sums[i].divide(weights[i]);
+				}
+			}
+			timer.stop();
+		}
+		return centroids;
+	}
+
+	/** Set the seed from which random numbers for each number of clusters k are drawn. */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+}